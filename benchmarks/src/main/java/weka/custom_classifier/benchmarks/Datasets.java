@@ -0,0 +1,74 @@
+package weka.custom_classifier.benchmarks;
+
+import java.io.File;
+import java.util.Random;
+
+import weka.core.Instances;
+import weka.core.converters.ConverterUtils.DataSource;
+import weka.filters.Filter;
+import weka.filters.unsupervised.attribute.Discretize;
+import weka.filters.unsupervised.attribute.ReplaceMissingValues;
+
+/**
+ * Datasets of the benchmarks: the datasets of example/, last attribute as class, scaled up on demand
+ * The directory is the system property benchmark.examples, ../example by default (running from benchmarks/)
+ */
+public class Datasets {
+	/** every dataset of example/ */
+	public static final String[] NAMES = {"iris", "diabetes", "glass", "labor", "soybean", "weather.nominal", "weather.numeric", "activity.nominal", "supermarket", "cpu"};
+
+	private Datasets(){}
+
+	/**
+	 * Load a dataset, a numeric class is discretized into 4 bins as the tree learners need a nominal class
+	 * @param name dataset name, file name without .arff
+	 * @param scale 1 for the dataset itself, k for a synthetic version of k times as many instances
+	 * @return instances, class index set
+	 * @throws Exception
+	 */
+	public static Instances load(String name, int scale) throws Exception {
+		File file = new File(System.getProperty("benchmark.examples", "../example"), name + ".arff");
+		Instances data = DataSource.read(file.getPath());
+		if(data.attribute(data.numAttributes() - 1).isNumeric()){
+			Discretize discretize = new Discretize();
+			discretize.setAttributeIndices("last");
+			discretize.setBins(4);
+			discretize.setInputFormat(data);
+			data = Filter.useFilter(data, discretize);
+		}
+		data.setClassIndex(data.numAttributes() - 1);
+		return scale > 1 ? scaleUp(data, scale, new Random(1)) : data;
+	}
+
+	/**
+	 * Synthetic version of a dataset, instances drawn with replacement, so the class and attribute distributions are kept
+	 * @param data dataset
+	 * @param scale number of instances, as a multiple of the dataset size
+	 * @param random random number generator
+	 * @return instances
+	 */
+	public static Instances scaleUp(Instances data, int scale, Random random) {
+		int numInstances = data.numInstances() * scale;
+		Instances retVal = new Instances(data, numInstances);
+		for(int i = 0; i < numInstances; i++){
+			retVal.add(data.instance(random.nextInt(data.numInstances())));
+		}
+		return retVal;
+	}
+
+	/**
+	 * Nominal version of a dataset for the ID3 learners: missing values replaced, numeric attributes discretized into 10 bins
+	 * @param data dataset, class index set
+	 * @return instances
+	 * @throws Exception
+	 */
+	public static Instances nominal(Instances data) throws Exception {
+		ReplaceMissingValues replace = new ReplaceMissingValues();
+		replace.setInputFormat(data);
+		data = Filter.useFilter(data, replace);
+
+		Discretize discretize = new Discretize();
+		discretize.setInputFormat(data);
+		return Filter.useFilter(data, discretize);
+	}
+}
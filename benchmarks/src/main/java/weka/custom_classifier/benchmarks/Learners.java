@@ -0,0 +1,54 @@
+package weka.custom_classifier.benchmarks;
+
+import weka.classifiers.Classifier;
+import weka.classifiers.trees.Id3;
+import weka.classifiers.trees.J48;
+import weka.core.Instances;
+import weka.custom_classifier.Id3.CustomId3;
+import weka.custom_classifier.J48.CustomJ48;
+
+/**
+ * Learners of the benchmarks, the custom trees and Weka's J48 and Id3 as baselines
+ */
+public class Learners {
+	private Learners(){}
+
+	/**
+	 * @param name CustomJ48 (binary split), CustomJ48-multisplit, CustomJ48-exact, CustomJ48-histogram, J48, CustomId3 or Id3
+	 * @return untrained classifier
+	 */
+	public static Classifier create(String name) {
+		if(name.equals("CustomJ48")){
+			return new CustomJ48();
+		}else if(name.equals("CustomJ48-multisplit")){
+			CustomJ48 j48 = new CustomJ48();
+			j48.setOption(0, 10);
+			return j48;
+		}else if(name.equals("CustomJ48-exact")){
+			CustomJ48 j48 = new CustomJ48();
+			j48.setOption(2, 10);
+			return j48;
+		}else if(name.equals("CustomJ48-histogram")){
+			CustomJ48 j48 = new CustomJ48();
+			j48.setOption(3, 10);
+			return j48;
+		}else if(name.equals("J48")){
+			return new J48();
+		}else if(name.equals("CustomId3")){
+			return new CustomId3();
+		}else if(name.equals("Id3")){
+			return new Id3();
+		}
+		throw new IllegalArgumentException("Unknown learner " + name);
+	}
+
+	/**
+	 * @param name learner name
+	 * @param data dataset
+	 * @return the dataset as the learner can take it, nominal without missing value for ID3
+	 * @throws Exception
+	 */
+	public static Instances trainingData(String name, Instances data) throws Exception {
+		return name.endsWith("Id3") ? Datasets.nominal(data) : data;
+	}
+}
@@ -0,0 +1,99 @@
+package weka.custom_classifier.benchmarks;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import weka.classifiers.Classifier;
+import weka.classifiers.trees.J48;
+import weka.core.Attribute;
+import weka.core.Instances;
+import weka.core.Utils;
+import weka.custom_classifier.ColumnarDataset;
+import weka.custom_classifier.NodeStatistics;
+import weka.custom_classifier.RowPartition;
+import weka.custom_classifier.Tree;
+import weka.custom_classifier.J48.CustomJ48;
+
+/**
+ * Cost of pruning: subtree raising of CustomJ48 on a freshly grown unpruned tree (binary split),
+ * against Weka's J48 built with and without pruning
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PruneBenchmark {
+	@Param({"iris", "diabetes", "glass", "labor", "soybean", "weather.nominal", "weather.numeric", "activity.nominal", "supermarket", "cpu"})
+	public String dataset;
+
+	@Param({"1", "10"})
+	public int scale;
+
+	private Instances data;
+	private CustomJ48 j48;
+	private Instances split; //data with the numeric attributes split as j48 splits them
+	private ColumnarDataset columns;
+
+	@Setup(Level.Trial)
+	public void prepare() throws Exception {
+		data = Datasets.load(dataset, scale);
+		data.deleteWithMissingClass();
+		j48 = new CustomJ48();
+		j48.buildClassifier(new Instances(data)); //thresholds of the binary split
+		split = j48.binarySplitNumericSuppliedTest(data);
+		columns = new ColumnarDataset(split);
+	}
+
+	/**
+	 * Unpruned tree grown again before every invocation, pruning modifies it
+	 */
+	@State(Scope.Thread)
+	public static class UnprunedTree {
+		Tree tree;
+
+		@Setup(Level.Invocation)
+		public void grow(PruneBenchmark benchmark) {
+			tree = new Tree();
+			int[] rows = RowPartition.identity(benchmark.columns.numRows());
+			NodeStatistics stats = NodeStatistics.count(benchmark.columns, rows, 0, rows.length);
+			benchmark.j48.generateTree(benchmark.columns, rows, 0, rows.length,
+					stats.majorityClass(), stats, tree, new ArrayList<Attribute>());
+		}
+	}
+
+	@Benchmark
+	public Tree subtreeRaising(UnprunedTree unpruned) {
+		j48.pruneTree(null, null, unpruned.tree, split);
+		return unpruned.tree;
+	}
+
+	@Benchmark
+	public Classifier wekaJ48Pruned() throws Exception {
+		J48 tree = new J48();
+		tree.buildClassifier(data);
+		return tree;
+	}
+
+	@Benchmark
+	public Classifier wekaJ48Unpruned() throws Exception {
+		J48 tree = new J48();
+		tree.setOptions(Utils.splitOptions("-U"));
+		tree.buildClassifier(data);
+		return tree;
+	}
+}
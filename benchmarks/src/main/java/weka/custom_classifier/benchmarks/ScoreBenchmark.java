@@ -0,0 +1,86 @@
+package weka.custom_classifier.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import weka.classifiers.Classifier;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.custom_classifier.Id3.CustomId3;
+import weka.custom_classifier.J48.CustomJ48;
+
+/**
+ * Inference on the training data of a model built once:
+ * latency of one classifyInstance, cycling through the instances, and time of scoring every instance as one batch
+ * The custom trees score the batch with classifyInstances, the Weka baselines classify instance by instance
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScoreBenchmark {
+	@Param({"iris", "diabetes", "glass", "labor", "soybean", "weather.nominal", "weather.numeric", "activity.nominal", "supermarket", "cpu"})
+	public String dataset;
+
+	@Param({"1", "10"})
+	public int scale;
+
+	@Param({"CustomJ48", "CustomJ48-multisplit", "CustomJ48-exact", "CustomJ48-histogram", "J48", "CustomId3", "Id3"})
+	public String learner;
+
+	private Classifier model;
+	private Instances data;
+	private double[][] rows;
+	private int[] predictions;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void build() throws Exception {
+		data = Learners.trainingData(learner, Datasets.load(dataset, scale));
+		model = Learners.create(learner);
+		model.buildClassifier(new Instances(data));
+
+		rows = new double[data.numInstances()][];
+		for(int i = 0; i < rows.length; i++){
+			rows[i] = data.instance(i).toDoubleArray();
+		}
+		predictions = new int[rows.length];
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public double classifyInstance() throws Exception {
+		Instance instance = data.instance(next);
+		next = next + 1 == rows.length ? 0 : next + 1;
+		return model.classifyInstance(instance);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public int[] classifyBatch() throws Exception {
+		if(model instanceof CustomJ48){
+			((CustomJ48) model).classifyInstances(rows, predictions);
+		}else if(model instanceof CustomId3){
+			((CustomId3) model).classifyInstances(rows, predictions);
+		}else{
+			for(int i = 0; i < rows.length; i++){
+				predictions[i] = (int) model.classifyInstance(data.instance(i));
+			}
+		}
+		return predictions;
+	}
+}
@@ -0,0 +1,54 @@
+package weka.custom_classifier.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import weka.classifiers.Classifier;
+import weka.core.Instances;
+
+/**
+ * Time of buildClassifier on a whole dataset
+ * The copy of the training data is measured too, as CustomJ48 and CustomId3 delete the instances with missing class of their input
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TrainBenchmark {
+	@Param({"iris", "diabetes", "glass", "labor", "soybean", "weather.nominal", "weather.numeric", "activity.nominal", "supermarket", "cpu"})
+	public String dataset;
+
+	@Param({"1", "10"})
+	public int scale;
+
+	@Param({"CustomJ48", "CustomJ48-multisplit", "CustomJ48-exact", "CustomJ48-histogram", "J48", "CustomId3", "Id3"})
+	public String learner;
+
+	private Instances data;
+
+	@Setup(Level.Trial)
+	public void load() throws Exception {
+		data = Learners.trainingData(learner, Datasets.load(dataset, scale));
+	}
+
+	@Benchmark
+	public Classifier buildClassifier() throws Exception {
+		Classifier classifier = Learners.create(learner);
+		classifier.buildClassifier(new Instances(data));
+		return classifier;
+	}
+}
@@ -0,0 +1,52 @@
+package weka.custom_classifier;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Fork/join task counting the contingency tables of a range of candidate attributes of one node
+ * Every attribute fills its own table, so the result does not depend on the scheduling
+ */
+public class AttributeCountTask extends RecursiveAction {
+	private static final long serialVersionUID = 1L;
+
+	private ColumnarDataset data;
+	private int[] rows;
+	private int from;
+	private int to;
+	private ContingencyTable[] tables;
+	private int[] candidates;
+	private int lo;
+	private int hi;
+
+	/**
+	 * @param data training data in columns
+	 * @param rows row indexes into data
+	 * @param from first index of the node rows
+	 * @param to last index of the node rows, exclusive
+	 * @param tables contingency table per attribute index, allocated for every candidate
+	 * @param candidates candidate attribute indexes
+	 * @param lo first candidate of this task
+	 * @param hi last candidate of this task, exclusive
+	 */
+	public AttributeCountTask(ColumnarDataset data, int[] rows, int from, int to, ContingencyTable[] tables, int[] candidates, int lo, int hi){
+		this.data = data;
+		this.rows = rows;
+		this.from = from;
+		this.to = to;
+		this.tables = tables;
+		this.candidates = candidates;
+		this.lo = lo;
+		this.hi = hi;
+	}
+
+	@Override
+	protected void compute(){
+		if(hi - lo == 1){
+			data.count(tables[candidates[lo]], candidates[lo], rows, from, to);
+		}else if(hi - lo > 1){
+			int mid = (lo + hi) >>> 1;
+			invokeAll(new AttributeCountTask(data, rows, from, to, tables, candidates, lo, mid),
+					new AttributeCountTask(data, rows, from, to, tables, candidates, mid, hi));
+		}
+	}
+}
@@ -0,0 +1,235 @@
+package weka.custom_classifier;
+
+import java.util.Arrays;
+
+/**
+ * Numeric attributes binned once into at most 255 quantile bins, one byte code per row, for histogram threshold search
+ * A node holds one class histogram per numeric attribute (bin x class counts, missing values in an extra bin),
+ * the best threshold is found by one sweep over the bins, so it costs the number of bins and not the number of rows
+ * The histograms of a split node are handed down: the smaller children are counted from their rows,
+ * the largest child is the parent minus its siblings
+ */
+public class BinnedColumns {
+	/** maximum number of bins of an attribute, the last byte code is kept for missing values */
+	public static final int MAX_BINS = 255;
+	private static final int MISSING = 0xFF;
+
+	private ColumnarDataset data;
+	private double[][] cutPoints; //cutPoints[att] ascending, null for nominal attribute
+	private byte[][] codes; //codes[att][row], bin of the row value or MISSING
+
+	/**
+	 * Bin every numeric attribute
+	 * A value falls in the first bin whose cut point it is less or equal to, the last bin if none;
+	 * an attribute with at most MAX_BINS distinct values gets one bin per value, so its thresholds are exact
+	 * @param data training data in columns
+	 */
+	public BinnedColumns(ColumnarDataset data){
+		this.data = data;
+		cutPoints = new double[data.numAttributes()][];
+		codes = new byte[data.numAttributes()][];
+
+		for(int att = 0; att < data.numAttributes(); att++){
+			double[] column = data.numericColumn(att);
+			if(att != data.classIndex() && column != null){
+				cutPoints[att] = quantiles(column);
+				codes[att] = new byte[column.length];
+				for(int row = 0; row < column.length; row++){
+					codes[att][row] = (byte) (Double.isNaN(column[row]) ? MISSING : bin(cutPoints[att], column[row]));
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param column numeric column
+	 * @return at most MAX_BINS - 1 ascending cut points, every one below the maximum, at the quantiles of the known values
+	 */
+	private static double[] quantiles(double[] column){
+		double[] sorted = new double[column.length];
+		int numKnown = 0;
+		for(int row = 0; row < column.length; row++){
+			if(!Double.isNaN(column[row])){
+				sorted[numKnown++] = column[row];
+			}
+		}
+		Arrays.sort(sorted, 0, numKnown);
+
+		double[] distinct = new double[numKnown];
+		int numDistinct = 0;
+		for(int i = 0; i < numKnown; i++){
+			if(numDistinct == 0 || sorted[i] > distinct[numDistinct - 1]){
+				distinct[numDistinct++] = sorted[i];
+			}
+		}
+		if(numDistinct <= MAX_BINS){
+			return Arrays.copyOf(distinct, Math.max(0, numDistinct - 1));
+		}
+
+		double max = distinct[numDistinct - 1];
+		double[] cuts = new double[MAX_BINS - 1];
+		int numCuts = 0;
+		for(int k = 1; k < MAX_BINS; k++){
+			double value = sorted[(int) ((long) k * numKnown / MAX_BINS) - 1];
+			if(value < max && (numCuts == 0 || value > cuts[numCuts - 1])){
+				cuts[numCuts++] = value;
+			}
+		}
+		return Arrays.copyOf(cuts, numCuts);
+	}
+
+	private static int bin(double[] cuts, double value){
+		int index = Arrays.binarySearch(cuts, value);
+		return index >= 0 ? index : -index - 1;
+	}
+
+	/**
+	 * @param att attribute index
+	 * @return true if the attribute is binned
+	 */
+	public boolean isBinned(int att){
+		return codes[att] != null;
+	}
+
+	/**
+	 * @param att numeric attribute index
+	 * @return number of bins of the known values
+	 */
+	public int numBins(int att){
+		return cutPoints[att].length + 1;
+	}
+
+	/**
+	 * Count the class histogram of every numeric attribute, one pass over each code column
+	 * @param rows row indexes into data
+	 * @param from first index of the node rows
+	 * @param to last index of the node rows, exclusive
+	 * @return histogram per attribute index, null for nominal attribute:
+	 * count of bin b and class c at b * numClasses + c, bin numBins(att) for missing values
+	 */
+	public int[][] histograms(int[] rows, int from, int to){
+		int numClasses = data.numClasses();
+		int[] classes = new int[to - from];
+		for(int i = from; i < to; i++){
+			classes[i - from] = data.classValue(rows[i]);
+		}
+
+		int[][] histograms = new int[codes.length][];
+		for(int att = 0; att < codes.length; att++){
+			if(codes[att] != null){
+				byte[] column = codes[att];
+				int missingBin = numBins(att);
+				int[] histogram = new int[(missingBin + 1) * numClasses];
+				for(int i = from; i < to; i++){
+					int code = column[rows[i]] & 0xFF;
+					histogram[(code == MISSING ? missingBin : code) * numClasses + classes[i - from]]++;
+				}
+				histograms[att] = histogram;
+			}
+		}
+		return histograms;
+	}
+
+	/**
+	 * Find the best threshold with one sweep over the bins of the node histogram
+	 * The split point is the cut point of the last bin of the lower side, rows with missing value go to child 0
+	 * @param att numeric attribute index
+	 * @param histograms histograms of the node, null for a node that is not split
+	 * @param entropy entropy of the node
+	 * @param numInstances number of rows of the node
+	 * @return best split, same gain as the exact threshold search when every value has its own bin
+	 */
+	public PresortedColumns.Split bestSplit(int att, int[][] histograms, double entropy, int numInstances){
+		int numClasses = data.numClasses();
+		PresortedColumns.Split split = new PresortedColumns.Split();
+		split.aboveCounts = new int[numClasses];
+		if(histograms == null){
+			return split;
+		}
+
+		int[] histogram = histograms[att];
+		int numBins = numBins(att);
+		int[] below = new int[numClasses];
+		int[] above = new int[numClasses];
+		int numKnown = 0;
+		for(int b = 0; b < numBins; b++){
+			for(int c = 0; c < numClasses; c++){
+				above[c] += histogram[b * numClasses + c];
+			}
+		}
+		for(int c = 0; c < numClasses; c++){
+			numKnown += above[c];
+			split.numMissing += histogram[numBins * numClasses + c];
+		}
+
+		int numBelow = 0;
+		for(int b = 0; b < numBins - 1; b++){
+			int binTotal = 0;
+			for(int c = 0; c < numClasses; c++){
+				int count = histogram[b * numClasses + c];
+				below[c] += count;
+				above[c] -= count;
+				binTotal += count;
+			}
+			if(binTotal == 0){ //same partition as the last non empty bin
+				continue;
+			}
+			numBelow += binTotal;
+			int numAbove = numKnown - numBelow;
+			if(numAbove == 0){
+				break;
+			}
+			double gain = entropy
+					- (double) numBelow / (double) numInstances * ContingencyTable.entropy(below, numBelow)
+					- (double) numAbove / (double) numInstances * ContingencyTable.entropy(above, numAbove);
+			if(gain > split.gain){
+				split.gain = gain;
+				split.splitPoint = cutPoints[att][b];
+				System.arraycopy(above, 0, split.aboveCounts, 0, numClasses);
+			}
+		}
+		return split;
+	}
+
+	/**
+	 * Hand the histograms of a split node down to its children, the parent histograms are reused and cleared
+	 * Only children that can be split get histograms: the largest one is the parent minus its siblings,
+	 * so only the rows of the smaller children are counted
+	 * @param parent statistics of the split node, with its histograms
+	 * @param children statistics of the children, histograms set
+	 * @param rows row indexes into data, partitioned
+	 * @param bounds child i holds [bounds[i]..bounds[i+1])
+	 */
+	public void childHistograms(NodeStatistics parent, NodeStatistics[] children, int[] rows, int[] bounds){
+		int[][] histograms = parent.getHistograms();
+		parent.setHistograms(null);
+		int largest = 0;
+		for(int i = 1; i < children.length; i++){
+			if(bounds[i + 1] - bounds[i] > bounds[largest + 1] - bounds[largest]){
+				largest = i;
+			}
+		}
+
+		boolean subtract = !children[largest].isPure();
+		for(int i = 0; i < children.length; i++){
+			if(i != largest && (subtract || !children[i].isPure())){
+				int[][] counted = histograms(rows, bounds[i], bounds[i + 1]);
+				if(subtract){
+					for(int att = 0; att < histograms.length; att++){
+						if(histograms[att] != null){
+							for(int j = 0; j < histograms[att].length; j++){
+								histograms[att][j] -= counted[att][j];
+							}
+						}
+					}
+				}
+				if(!children[i].isPure()){
+					children[i].setHistograms(counted);
+				}
+			}
+		}
+		if(subtract){
+			children[largest].setHistograms(histograms);
+		}
+	}
+}
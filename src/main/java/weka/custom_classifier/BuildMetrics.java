@@ -0,0 +1,217 @@
+package weka.custom_classifier;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.ObjectName;
+
+/**
+ * Time, allocation and node counters of tree building, shared by the custom trees
+ * Registered once on the platform MBean server as weka.custom_classifier:type=BuildMetrics,
+ * counters are updated once per node or per phase, not per row
+ */
+public class BuildMetrics implements BuildMetricsMBean {
+	public static final int DISCRETIZE = 0;
+	public static final int GROW = 1;
+	public static final int PRUNE = 2;
+	public static final int EVALUATE = 3;
+
+	public static final String OBJECT_NAME = "weka.custom_classifier:type=BuildMetrics";
+
+	private static final Logger LOGGER = Logger.getLogger(BuildMetrics.class.getName());
+	private static final BuildMetrics INSTANCE = register(new BuildMetrics());
+
+	private AtomicLong builds;
+	private AtomicLongArray nanos; //per phase
+	private AtomicLongArray bytes; //per phase
+	private AtomicLong nodesCreated;
+	private AtomicLong rowsScanned;
+	private AtomicLong gainEvaluations;
+	private AtomicInteger maxDepth;
+	private com.sun.management.ThreadMXBean threads; //null if allocation is not measured
+
+	private BuildMetrics(){
+		builds = new AtomicLong();
+		nanos = new AtomicLongArray(4);
+		bytes = new AtomicLongArray(4);
+		nodesCreated = new AtomicLong();
+		rowsScanned = new AtomicLong();
+		gainEvaluations = new AtomicLong();
+		maxDepth = new AtomicInteger();
+		if(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean){
+			threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+			if(!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled()){
+				threads = null;
+			}
+		}
+	}
+
+	private static BuildMetrics register(BuildMetrics metrics){
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, new ObjectName(OBJECT_NAME));
+		} catch (Exception ex) {
+			//metrics are still collected, only not visible over JMX
+			LOGGER.log(Level.WARNING, "Cannot register " + OBJECT_NAME, ex);
+		}
+		return metrics;
+	}
+
+	/**
+	 * @return metrics of every tree built in the JVM
+	 */
+	public static BuildMetrics get(){
+		return INSTANCE;
+	}
+
+	/**
+	 * Phase of one build, measured on the thread starting it
+	 */
+	public class PhaseTimer {
+		private int phase;
+		private long startNanos;
+		private long startBytes;
+
+		private PhaseTimer(int phase){
+			this.phase = phase;
+			startBytes = allocatedBytes();
+			startNanos = System.nanoTime();
+		}
+
+		/**
+		 * Add the time and allocation since the start to the phase
+		 */
+		public void stop(){
+			nanos.addAndGet(phase, System.nanoTime() - startNanos);
+			bytes.addAndGet(phase, allocatedBytes() - startBytes);
+		}
+	}
+
+	/**
+	 * @param phase DISCRETIZE, GROW, PRUNE or EVALUATE
+	 * @return timer of the phase, stopped by the caller
+	 */
+	public PhaseTimer start(int phase){
+		return new PhaseTimer(phase);
+	}
+
+	private long allocatedBytes(){
+		return threads == null ? 0 : threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * Count a tree build
+	 */
+	public void recordBuild(){
+		builds.incrementAndGet();
+	}
+
+	/**
+	 * Count a grown node
+	 * @param numRows rows reaching the node
+	 * @param numGainEvaluations attributes scored at the node
+	 */
+	public void recordNode(long numRows, int numGainEvaluations){
+		nodesCreated.incrementAndGet();
+		rowsScanned.addAndGet(numRows);
+		gainEvaluations.addAndGet(numGainEvaluations);
+	}
+
+	/**
+	 * Record the depth of a grown tree
+	 * @param root root of the tree
+	 */
+	public void recordDepth(Tree root){
+		int depth = depth(root);
+		int max = maxDepth.get();
+		while(depth > max && !maxDepth.compareAndSet(max, depth)){
+			max = maxDepth.get();
+		}
+	}
+
+	private static int depth(Tree tree){
+		if(tree.getAttribute() == null || tree.getChildren() == null){
+			return 0;
+		}
+		int depth = 0;
+		Tree[] children = tree.getChildren();
+		for(int i = 0; i < children.length; i++){
+			depth = Math.max(depth, depth(children[i]));
+		}
+		return depth + 1;
+	}
+
+	public long getBuilds(){
+		return builds.get();
+	}
+
+	public long getDiscretizeTimeMillis(){
+		return nanos.get(DISCRETIZE) / 1000000;
+	}
+
+	public long getGrowTimeMillis(){
+		return nanos.get(GROW) / 1000000;
+	}
+
+	public long getPruneTimeMillis(){
+		return nanos.get(PRUNE) / 1000000;
+	}
+
+	public long getEvaluateTimeMillis(){
+		return nanos.get(EVALUATE) / 1000000;
+	}
+
+	public long getDiscretizeBytes(){
+		return bytes.get(DISCRETIZE);
+	}
+
+	public long getGrowBytes(){
+		return bytes.get(GROW);
+	}
+
+	public long getPruneBytes(){
+		return bytes.get(PRUNE);
+	}
+
+	public long getEvaluateBytes(){
+		return bytes.get(EVALUATE);
+	}
+
+	public long getNodesCreated(){
+		return nodesCreated.get();
+	}
+
+	public long getRowsScanned(){
+		return rowsScanned.get();
+	}
+
+	public long getGainEvaluations(){
+		return gainEvaluations.get();
+	}
+
+	public int getMaxDepth(){
+		return maxDepth.get();
+	}
+
+	public void reset(){
+		builds.set(0);
+		for(int i = 0; i < 4; i++){
+			nanos.set(i, 0);
+			bytes.set(i, 0);
+		}
+		nodesCreated.set(0);
+		rowsScanned.set(0);
+		gainEvaluations.set(0);
+		maxDepth.set(0);
+	}
+
+	public String toString(){
+		return String.format("builds=%d discretize=%dms/%dB grow=%dms/%dB prune=%dms/%dB evaluate=%dms/%dB nodes=%d rows=%d gains=%d maxDepth=%d",
+				getBuilds(), getDiscretizeTimeMillis(), getDiscretizeBytes(), getGrowTimeMillis(), getGrowBytes(),
+				getPruneTimeMillis(), getPruneBytes(), getEvaluateTimeMillis(), getEvaluateBytes(),
+				getNodesCreated(), getRowsScanned(), getGainEvaluations(), getMaxDepth());
+	}
+}
@@ -0,0 +1,52 @@
+package weka.custom_classifier;
+
+/**
+ * Management interface of BuildMetrics, totals since the start of the JVM or the last reset
+ */
+public interface BuildMetricsMBean {
+	/**
+	 * @return number of trees built
+	 */
+	long getBuilds();
+
+	long getDiscretizeTimeMillis();
+
+	long getGrowTimeMillis();
+
+	long getPruneTimeMillis();
+
+	long getEvaluateTimeMillis();
+
+	/**
+	 * @return bytes allocated by the building thread while discretizing, 0 if the JVM cannot measure it
+	 */
+	long getDiscretizeBytes();
+
+	long getGrowBytes();
+
+	long getPruneBytes();
+
+	long getEvaluateBytes();
+
+	/**
+	 * @return number of nodes grown, before pruning
+	 */
+	long getNodesCreated();
+
+	/**
+	 * @return sum over the grown nodes of the number of rows reaching them
+	 */
+	long getRowsScanned();
+
+	/**
+	 * @return number of attributes scored over the grown nodes
+	 */
+	long getGainEvaluations();
+
+	/**
+	 * @return depth of the deepest tree grown, a single leaf has depth 0
+	 */
+	int getMaxDepth();
+
+	void reset();
+}
@@ -0,0 +1,372 @@
+package weka.custom_classifier;
+
+import java.util.Arrays;
+
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * Column oriented training store for the custom tree learners
+ * Nominal attributes are held as byte (or short, for more than 127 values) code columns with -1 for missing value,
+ * numeric attributes as double columns with NaN for missing value, and the class labels as a byte column
+ */
+public class ColumnarDataset {
+	/** code of missing class label in the class column */
+	public static final int MISSING_CLASS = 0xFF;
+
+	private Instances header;
+	private int numRows;
+	private byte[][] byteColumns;
+	private short[][] shortColumns;
+	private double[][] numericColumns;
+	private byte[] classes;
+
+	/**
+	 * Create an empty store to be filled with setValue
+	 * @param header dataset structure, class index must be set
+	 * @param numRows number of rows
+	 */
+	public ColumnarDataset(Instances header, int numRows){
+		this.header = new Instances(header, 0);
+		this.numRows = numRows;
+
+		int numAttributes = header.numAttributes();
+		byteColumns = new byte[numAttributes][];
+		shortColumns = new short[numAttributes][];
+		numericColumns = new double[numAttributes][];
+
+		for(int i = 0; i < numAttributes; i++){
+			Attribute att = header.attribute(i);
+			if(i == header.classIndex()){
+				if(!att.isNominal() || att.numValues() >= MISSING_CLASS){
+					throw new IllegalArgumentException("Class attribute must be nominal with less than " + MISSING_CLASS + " values");
+				}
+				classes = new byte[numRows];
+			}else if(att.isNominal()){
+				if(att.numValues() <= Byte.MAX_VALUE){
+					byteColumns[i] = new byte[numRows];
+				}else if(att.numValues() <= Short.MAX_VALUE){
+					shortColumns[i] = new short[numRows];
+				}else{
+					throw new IllegalArgumentException("Too many values for attribute " + att.name());
+				}
+			}else if(att.isNumeric()){
+				numericColumns[i] = new double[numRows];
+			}else{
+				throw new IllegalArgumentException("Attribute type not supported: " + att.name());
+			}
+		}
+	}
+
+	/**
+	 * Convert instances into columns
+	 * @param data instances, class index must be set
+	 */
+	public ColumnarDataset(Instances data){
+		this(data, data.numInstances());
+
+		for(int i = 0; i < numRows; i++){
+			Instance instance = data.instance(i);
+			for(int j = 0; j < header.numAttributes(); j++){
+				setValue(j, i, instance.value(j));
+			}
+		}
+	}
+
+	/**
+	 * @return dataset structure, no instances
+	 */
+	public Instances header(){
+		return header;
+	}
+
+	public Attribute attribute(int att){
+		return header.attribute(att);
+	}
+
+	public Attribute classAttribute(){
+		return header.classAttribute();
+	}
+
+	public int classIndex(){
+		return header.classIndex();
+	}
+
+	public int numAttributes(){
+		return header.numAttributes();
+	}
+
+	public int numClasses(){
+		return header.numClasses();
+	}
+
+	public int numRows(){
+		return numRows;
+	}
+
+	/**
+	 * Set one cell
+	 * @param att attribute index
+	 * @param row row index
+	 * @param value value as in weka Instance, missing value allowed
+	 */
+	public void setValue(int att, int row, double value){
+		boolean missing = Instance.isMissingValue(value);
+		if(att == header.classIndex()){
+			classes[row] = (byte) (missing ? MISSING_CLASS : (int) value);
+		}else if(byteColumns[att] != null){
+			byteColumns[att][row] = (byte) (missing ? -1 : (int) value);
+		}else if(shortColumns[att] != null){
+			shortColumns[att][row] = (short) (missing ? -1 : (int) value);
+		}else{
+			numericColumns[att][row] = missing ? Double.NaN : value;
+		}
+	}
+
+	/**
+	 * @param att attribute index
+	 * @param row row index
+	 * @return value as in weka Instance
+	 */
+	public double value(int att, int row){
+		if(att == header.classIndex()){
+			int classValue = classValue(row);
+			return classValue == MISSING_CLASS ? Instance.missingValue() : classValue;
+		}else if(numericColumns[att] != null){
+			return numericColumns[att][row];
+		}else{
+			int code = nominalValue(att, row);
+			return code < 0 ? Instance.missingValue() : code;
+		}
+	}
+
+	/**
+	 * @param att nominal attribute index, not the class
+	 * @param row row index
+	 * @return value index, -1 if missing
+	 */
+	public int nominalValue(int att, int row){
+		byte[] column = byteColumns[att];
+		if(column != null){
+			return column[row];
+		}
+		return shortColumns[att][row];
+	}
+
+	/**
+	 * @param att numeric attribute index
+	 * @param row row index
+	 * @return value, NaN if missing
+	 */
+	public double numericValue(int att, int row){
+		return numericColumns[att][row];
+	}
+
+	public boolean isMissing(int att, int row){
+		return Instance.isMissingValue(value(att, row));
+	}
+
+	/**
+	 * @param row row index
+	 * @return class value index, MISSING_CLASS if missing
+	 */
+	public int classValue(int row){
+		return classes[row] & 0xFF;
+	}
+
+	/**
+	 * @return numeric column of an attribute, null if the attribute is not numeric
+	 */
+	public double[] numericColumn(int att){
+		return numericColumns[att];
+	}
+
+	/**
+	 * @return byte code column of a nominal attribute, null if the attribute is stored otherwise
+	 */
+	public byte[] byteColumn(int att){
+		return att == header.classIndex() ? classes : byteColumns[att];
+	}
+
+	/**
+	 * @return short code column of a nominal attribute with more than 127 values, null if the attribute is stored otherwise
+	 */
+	public short[] shortColumn(int att){
+		return shortColumns[att];
+	}
+
+	/**
+	 * Copy of consecutive rows, column by column
+	 * @param from first row
+	 * @param to last row, exclusive
+	 * @return rows [from..to), this store if it is every row
+	 */
+	public ColumnarDataset range(int from, int to){
+		if(from == 0 && to == numRows){
+			return this;
+		}
+		ColumnarDataset range = new ColumnarDataset(header, 0);
+		range.numRows = to - from;
+		for(int i = 0; i < header.numAttributes(); i++){
+			if(byteColumns[i] != null){
+				range.byteColumns[i] = Arrays.copyOfRange(byteColumns[i], from, to);
+			}else if(shortColumns[i] != null){
+				range.shortColumns[i] = Arrays.copyOfRange(shortColumns[i], from, to);
+			}else if(numericColumns[i] != null){
+				range.numericColumns[i] = Arrays.copyOfRange(numericColumns[i], from, to);
+			}
+		}
+		if(classes != null){
+			range.classes = Arrays.copyOfRange(classes, from, to);
+		}
+		return range;
+	}
+
+	/**
+	 * Rows with known class, as Instances.deleteWithMissingClass keeps them
+	 * @return copy of the rows with known class, this store if every class is known
+	 */
+	public ColumnarDataset withoutMissingClass(){
+		int[] known = new int[numRows];
+		int numKnown = 0;
+		for(int row = 0; row < numRows; row++){
+			if(classes == null || classValue(row) != MISSING_CLASS){
+				known[numKnown++] = row;
+			}
+		}
+		if(numKnown == numRows){
+			return this;
+		}
+
+		ColumnarDataset copy = new ColumnarDataset(header, numKnown);
+		for(int i = 0; i < header.numAttributes(); i++){
+			byte[] byteColumn = byteColumn(i);
+			for(int j = 0; j < numKnown; j++){
+				if(byteColumn != null){
+					copy.byteColumn(i)[j] = byteColumn[known[j]];
+				}else if(shortColumns[i] != null){
+					copy.shortColumns[i][j] = shortColumns[i][known[j]];
+				}else{
+					copy.numericColumns[i][j] = numericColumns[i][known[j]];
+				}
+			}
+		}
+		return copy;
+	}
+
+	/**
+	 * Same rows with another class attribute, sharing the columns
+	 * A byte code column holds the same codes as the class column (-1 is MISSING_CLASS),
+	 * only a class with more than 127 values is converted from or to a short column
+	 * @param classIndex class attribute index, nominal with less than MISSING_CLASS values
+	 * @return view of the columns with the class index, this store if it already has it
+	 */
+	public ColumnarDataset withClassIndex(int classIndex){
+		if(classIndex == header.classIndex()){
+			return this;
+		}
+		Instances viewHeader = new Instances(header, 0);
+		viewHeader.setClassIndex(classIndex);
+		ColumnarDataset view = new ColumnarDataset(viewHeader, 0);
+		view.numRows = numRows;
+		for(int i = 0; i < header.numAttributes(); i++){
+			byte[] byteColumn = byteColumn(i);
+			if(i == classIndex){
+				view.classes = byteColumn != null ? byteColumn : toBytes(shortColumns[i]);
+			}else if(view.byteColumns[i] != null){
+				view.byteColumns[i] = byteColumn;
+			}else if(view.shortColumns[i] != null){
+				view.shortColumns[i] = shortColumns[i] != null ? shortColumns[i] : toShorts(byteColumn);
+			}else{
+				view.numericColumns[i] = numericColumns[i];
+			}
+		}
+		return view;
+	}
+
+	private static byte[] toBytes(short[] column){
+		byte[] bytes = new byte[column.length];
+		for(int row = 0; row < column.length; row++){
+			bytes[row] = (byte) column[row];
+		}
+		return bytes;
+	}
+
+	/**
+	 * @param column class column, MISSING_CLASS read as -1
+	 */
+	private static short[] toShorts(byte[] column){
+		short[] shorts = new short[column.length];
+		for(int row = 0; row < column.length; row++){
+			shorts[row] = (short) ((column[row] & 0xFF) == MISSING_CLASS ? -1 : column[row] & 0xFF);
+		}
+		return shorts;
+	}
+
+	/**
+	 * Convert the columns back into instances
+	 * @return instances with the same header
+	 */
+	public Instances toInstances(){
+		Instances data = new Instances(header, numRows);
+		int numAttributes = header.numAttributes();
+		for(int i = 0; i < numRows; i++){
+			double[] values = new double[numAttributes];
+			for(int j = 0; j < numAttributes; j++){
+				values[j] = value(j, i);
+			}
+			data.add(new Instance(1.0, values));
+		}
+		return data;
+	}
+
+	/**
+	 * Count number of rows per class
+	 * @param counts filled with number of rows per class
+	 * @param rows row indexes
+	 * @param from first index of the rows
+	 * @param to last index of the rows, exclusive
+	 */
+	public void countClasses(int[] counts, int[] rows, int from, int to){
+		byte[] classes = this.classes;
+		for(int i = from; i < to; i++){
+			counts[classes[rows[i]] & 0xFF]++;
+		}
+	}
+
+	/**
+	 * Count value x class of one nominal attribute
+	 * @param table contingency table of the attribute
+	 * @param att nominal attribute index
+	 * @param rows row indexes
+	 * @param from first index of the rows
+	 * @param to last index of the rows, exclusive
+	 */
+	public void count(ContingencyTable table, int att, int[] rows, int from, int to){
+		byte[] classes = this.classes;
+		byte[] byteColumn = byteColumns[att];
+		if(byteColumn != null){
+			for(int i = from; i < to; i++){
+				int row = rows[i];
+				int code = byteColumn[row];
+				if(code < 0){
+					table.addMissing(classes[row] & 0xFF);
+				}else{
+					table.add(code, classes[row] & 0xFF);
+				}
+			}
+		}else{
+			short[] shortColumn = shortColumns[att];
+			for(int i = from; i < to; i++){
+				int row = rows[i];
+				int code = shortColumn[row];
+				if(code < 0){
+					table.addMissing(classes[row] & 0xFF);
+				}else{
+					table.add(code, classes[row] & 0xFF);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,347 @@
+package weka.custom_classifier;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import weka.core.Attribute;
+import weka.core.FastVector;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.converters.ConverterUtils.DataSource;
+
+/**
+ * Binary columnar dataset file, loaded by memory mapping instead of parsing text
+ * Layout: magic, version, offset of the first column, header (relation name, class index, number of rows,
+ * then name, storage and nominal values of every attribute), padding to 8 bytes, then one fixed width column per attribute in attribute order:
+ * byte or short value index (-1 for missing) for nominal attributes, as ColumnarDataset stores them, double (NaN for missing) for numeric attributes
+ */
+public class ColumnarFile {
+	private static final int MAGIC = 0x57434F4C; //"WCOL"
+	private static final int VERSION = 1;
+
+	private static final byte BYTE_COLUMN = 0;
+	private static final byte SHORT_COLUMN = 1;
+	private static final byte DOUBLE_COLUMN = 2;
+
+	private static final ScoringMetrics METRICS = ScoringMetrics.get();
+
+	private ColumnarFile(){}
+
+	/**
+	 * Write instances as a columnar file
+	 * Rows have no weight, so weighted instances are refused rather than written as weight 1
+	 * @param data instances, class index may be unset, every weight 1
+	 * @param file output file
+	 * @throws IOException
+	 */
+	public static void write(Instances data, File file) throws IOException {
+		for(int i = 0; i < data.numInstances(); i++){
+			if(data.instance(i).weight() != 1.0){
+				throw new IllegalArgumentException("Instance " + i + " has weight " + data.instance(i).weight() + ", columnar files do not store weights");
+			}
+		}
+		int classIndex = data.classIndex();
+		if(classIndex < 0 || isClassColumn(data.classAttribute())){
+			write(new ColumnarDataset(data), classIndex, file);
+		}else{
+			//class stored as an ordinary column
+			data.setClassIndex(-1);
+			try {
+				write(new ColumnarDataset(data), classIndex, file);
+			} finally {
+				data.setClassIndex(classIndex);
+			}
+		}
+	}
+
+	/**
+	 * Write columns as a columnar file
+	 * @param data columns, class index may be unset
+	 * @param file output file
+	 * @throws IOException
+	 */
+	public static void write(ColumnarDataset data, File file) throws IOException {
+		write(data, data.classIndex(), file);
+	}
+
+	private static void write(ColumnarDataset data, int classIndex, File file) throws IOException {
+		Instances header = data.header();
+		byte[] storage = new byte[header.numAttributes()];
+		for(int i = 0; i < storage.length; i++){
+			storage[i] = storage(data, i);
+		}
+
+		DataOutputStream out = create(file, header, classIndex, data.numRows(), storage);
+		try {
+			for(int i = 0; i < header.numAttributes(); i++){
+				if(storage[i] == BYTE_COLUMN){
+					out.write(data.byteColumn(i), 0, data.numRows());
+				}else if(storage[i] == SHORT_COLUMN){
+					short[] column = data.shortColumn(i);
+					for(int row = 0; row < column.length; row++){
+						out.writeShort(column[row]);
+					}
+				}else{
+					double[] column = data.numericColumn(i);
+					for(int row = 0; row < column.length; row++){
+						out.writeDouble(column[row]);
+					}
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Values of the rows of a columnar file, produced column by column
+	 */
+	public interface ColumnSource {
+		/**
+		 * @param att attribute index
+		 * @param row row index
+		 * @return value, as weka Instance value
+		 */
+		double value(int att, int row);
+	}
+
+	/**
+	 * Write a columnar file one column after the other, without holding the rows in memory
+	 * @param header attributes, class index may be unset
+	 * @param numRows number of rows
+	 * @param source values of the rows
+	 * @param file output file
+	 * @throws IOException
+	 */
+	public static void write(Instances header, int numRows, ColumnSource source, File file) throws IOException {
+		byte[] storage = new byte[header.numAttributes()];
+		for(int i = 0; i < storage.length; i++){
+			storage[i] = storage(header, i);
+		}
+
+		DataOutputStream out = create(file, header, header.classIndex(), numRows, storage);
+		try {
+			for(int i = 0; i < header.numAttributes(); i++){
+				for(int row = 0; row < numRows; row++){
+					double value = source.value(i, row);
+					if(storage[i] == BYTE_COLUMN){
+						//-1 is both the missing value and the missing class code
+						out.writeByte(Instance.isMissingValue(value) ? -1 : (int) value);
+					}else if(storage[i] == SHORT_COLUMN){
+						out.writeShort(Instance.isMissingValue(value) ? -1 : (int) value);
+					}else{
+						out.writeDouble(Instance.isMissingValue(value) ? Double.NaN : value);
+					}
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Create a columnar file and write everything before the first column
+	 * @param storage storage of every attribute
+	 * @return output positioned at the first column
+	 */
+	private static DataOutputStream create(File file, Instances header, int classIndex, int numRows, byte[] storage) throws IOException {
+		ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+		DataOutputStream headerOut = new DataOutputStream(headerBytes);
+		headerOut.writeUTF(header.relationName());
+		headerOut.writeInt(classIndex);
+		headerOut.writeInt(numRows);
+		headerOut.writeInt(header.numAttributes());
+		for(int i = 0; i < header.numAttributes(); i++){
+			Attribute att = header.attribute(i);
+			headerOut.writeUTF(att.name());
+			headerOut.writeByte(storage[i]);
+			if(att.isNominal()){
+				headerOut.writeInt(att.numValues());
+				for(int j = 0; j < att.numValues(); j++){
+					headerOut.writeUTF(att.value(j));
+				}
+			}
+		}
+		headerOut.close();
+		int dataOffset = (12 + headerBytes.size() + 7) / 8 * 8;
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(dataOffset);
+		headerBytes.writeTo(out);
+		while(out.size() < dataOffset){
+			out.writeByte(0);
+		}
+		return out;
+	}
+
+	/**
+	 * Map a columnar file into columns, every column is copied in bulk from the mapping, no parsing
+	 * @param file columnar file
+	 * @return columns, with the class index of the file
+	 * @throws IOException
+	 */
+	public static ColumnarDataset read(File file) throws IOException {
+		int[] classIndex = new int[1];
+		ColumnarDataset data = read(file, classIndex);
+		if(classIndex[0] != data.classIndex()){
+			throw new IllegalArgumentException("Class attribute must be nominal with less than " + ColumnarDataset.MISSING_CLASS + " values");
+		}
+		return data;
+	}
+
+	/**
+	 * Map a columnar file into instances
+	 * @param file columnar file
+	 * @return instances, with the class index of the file
+	 * @throws IOException
+	 */
+	public static Instances readInstances(File file) throws IOException {
+		int[] classIndex = new int[1];
+		Instances data = read(file, classIndex).toInstances();
+		data.setClassIndex(classIndex[0]);
+		return data;
+	}
+
+	/**
+	 * @param file columnar file
+	 * @param classIndex filled with the class index of the file, the columns have no class if it is not a class column
+	 */
+	static ColumnarDataset read(File file, int[] classIndex) throws IOException {
+		long start = System.nanoTime();
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		Instances header;
+		int numRows;
+		byte[] storage;
+		long offset;
+		try {
+			if(in.readInt() != MAGIC){
+				throw new IOException("Not a columnar dataset file: " + file);
+			}
+			int version = in.readInt();
+			if(version != VERSION){
+				throw new IOException("Unsupported columnar dataset version " + version + ": " + file);
+			}
+			offset = in.readInt();
+			String relationName = in.readUTF();
+			classIndex[0] = in.readInt();
+			numRows = in.readInt();
+			int numAttributes = in.readInt();
+			storage = new byte[numAttributes];
+			FastVector attributes = new FastVector(numAttributes);
+			for(int i = 0; i < numAttributes; i++){
+				String name = in.readUTF();
+				storage[i] = in.readByte();
+				if(storage[i] == DOUBLE_COLUMN){
+					attributes.addElement(new Attribute(name));
+				}else{
+					int numValues = in.readInt();
+					FastVector values = new FastVector(numValues);
+					for(int j = 0; j < numValues; j++){
+						String value = in.readUTF();
+						values.addElement(value);
+					}
+					attributes.addElement(new Attribute(name, values));
+				}
+			}
+			header = new Instances(relationName, attributes, 0);
+			if(classIndex[0] >= 0 && isClassColumn(header.attribute(classIndex[0]))){
+				header.setClassIndex(classIndex[0]);
+			}
+		} finally {
+			in.close();
+		}
+
+		ColumnarDataset data = new ColumnarDataset(header, numRows);
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			for(int i = 0; i < storage.length; i++){
+				if(storage[i] != storage(data, i)){
+					throw new IOException("Column " + i + " does not match its attribute: " + file);
+				}
+				long size = (long) numRows * (storage[i] == BYTE_COLUMN ? 1 : storage[i] == SHORT_COLUMN ? 2 : 8);
+				//one mapping per column, so a file may exceed the 2GB limit of a single mapping
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+				if(storage[i] == BYTE_COLUMN){
+					buffer.get(data.byteColumn(i));
+				}else if(storage[i] == SHORT_COLUMN){
+					buffer.asShortBuffer().get(data.shortColumn(i));
+				}else{
+					buffer.asDoubleBuffer().get(data.numericColumn(i));
+				}
+				offset += size;
+			}
+		} finally {
+			raf.close();
+		}
+		if(METRICS.isEnabled()){
+			METRICS.recordLoad(System.nanoTime() - start, numRows);
+		}
+		return data;
+	}
+
+	/**
+	 * @return true if ColumnarDataset can store the attribute as its class column
+	 */
+	private static boolean isClassColumn(Attribute att){
+		return att.isNominal() && att.numValues() < ColumnarDataset.MISSING_CLASS;
+	}
+
+	/**
+	 * Storage of an attribute, as chosen by ColumnarDataset
+	 */
+	private static byte storage(ColumnarDataset data, int att){
+		if(data.byteColumn(att) != null){
+			return BYTE_COLUMN;
+		}else if(data.shortColumn(att) != null){
+			return SHORT_COLUMN;
+		}
+		return DOUBLE_COLUMN;
+	}
+
+	/**
+	 * Storage of an attribute of a header, the storage ColumnarDataset chooses for it
+	 */
+	private static byte storage(Instances header, int att){
+		Attribute attribute = header.attribute(att);
+		if(att == header.classIndex() && isClassColumn(attribute)){
+			return BYTE_COLUMN;
+		}else if(attribute.isNominal()){
+			if(attribute.numValues() <= Byte.MAX_VALUE){
+				return BYTE_COLUMN;
+			}else if(attribute.numValues() <= Short.MAX_VALUE){
+				return SHORT_COLUMN;
+			}
+			throw new IllegalArgumentException("Too many values for attribute " + attribute.name());
+		}else if(attribute.isNumeric()){
+			return DOUBLE_COLUMN;
+		}
+		throw new IllegalArgumentException("Attribute type not supported: " + attribute.name());
+	}
+
+	/**
+	 * Convert an ARFF or CSV file into a columnar file
+	 * @param args input file, output file
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		if(args.length != 2){
+			System.out.println("Usage: ColumnarFile <input arff/csv> <output file>");
+			return;
+		}
+		Instances data = DataSource.read(args[0]);
+		write(data, new File(args[1]));
+	}
+}
@@ -0,0 +1,412 @@
+package weka.custom_classifier;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+import weka.core.Instance;
+
+/**
+ * Decision tree flattened into primitive arrays for allocation free inference
+ * Node 0 is the root, children of node n are children[childOffset[n]..childOffset[n]+number of branches)
+ * A node reads a nominal value index directly, or bins a numeric value with its cut points (or the split point of a numeric node):
+ * branch = first cut point the value is less or equal to, number of cut points if none
+ */
+public class CompiledTree implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	/** rows walked down the tree together by the batch methods */
+	private static final int BLOCK_SIZE = 256;
+
+	private static final ScoringMetrics METRICS = ScoringMetrics.get();
+
+	private int[] attribute; //input attribute index, -1 for leaf
+	private int[] childOffset;
+	private int[] children;
+	private double[] leafClass;
+	private int[] defaultBranch; //branch followed when the attribute value is missing
+	private int[] cutOffset;
+	private int[] numCuts; //0 for nominal node
+	private double[] cuts;
+	private int[] depth; //number of nodes tested to reach the node
+	private int maxDepth;
+
+	private CompiledTree(){}
+
+	/**
+	 * Maps the attributes of the tree to the attributes of the input the compiled tree classifies,
+	 * for a tree trained on discretized data classifying the original data
+	 */
+	public static class Binding {
+		private int[] inputAttribute;
+		private double[][] cutPoints;
+		private int[][] binValues;
+
+		/**
+		 * Identity binding
+		 * @param numAttributes number of attributes of the tree data
+		 */
+		public Binding(int numAttributes){
+			inputAttribute = new int[numAttributes];
+			cutPoints = new double[numAttributes][];
+			binValues = new int[numAttributes][];
+			for(int i = 0; i < numAttributes; i++){
+				inputAttribute[i] = i;
+			}
+		}
+
+		/**
+		 * @param treeAttribute attribute index in the tree data
+		 * @param inputAttribute attribute index in the input
+		 */
+		public void bind(int treeAttribute, int inputAttribute){
+			this.inputAttribute[treeAttribute] = inputAttribute;
+		}
+
+		/**
+		 * Bind a discretized attribute to a numeric input attribute
+		 * @param treeAttribute attribute index in the tree data
+		 * @param inputAttribute numeric attribute index in the input
+		 * @param cutPoints ascending cut points of the bins
+		 * @param binValues nominal value index of the tree attribute for every bin, null if bin i is value i
+		 */
+		public void bind(int treeAttribute, int inputAttribute, double[] cutPoints, int[] binValues){
+			this.inputAttribute[treeAttribute] = inputAttribute;
+			this.cutPoints[treeAttribute] = cutPoints;
+			this.binValues[treeAttribute] = binValues;
+		}
+	}
+
+	/**
+	 * Flatten a trained tree classifying data in the attribute space of the tree
+	 * @param root root of the tree
+	 * @return compiled tree
+	 */
+	public static CompiledTree compile(Tree root){
+		return compile(root, null);
+	}
+
+	/**
+	 * Flatten a trained tree
+	 * Missing value follows the most probable branch when the node has probabilities (J48), the first branch otherwise (ID3)
+	 * @param root root of the tree
+	 * @param binding input attribute of every tree attribute, null for the attribute space of the tree
+	 * @return compiled tree
+	 */
+	public static CompiledTree compile(Tree root, Binding binding){
+		ArrayList<Tree> nodes = new ArrayList<Tree>();
+		IdentityHashMap<Tree, Integer> ids = new IdentityHashMap<Tree, Integer>();
+		int numChildren = 0;
+
+		//number the nodes breadth first, a node shared by several parents is compiled once
+		ArrayList<Integer> depths = new ArrayList<Integer>();
+		nodes.add(root);
+		ids.put(root, 0);
+		depths.add(0);
+		for(int i = 0; i < nodes.size(); i++){
+			Tree node = nodes.get(i);
+			if(node.getAttribute() != null){
+				Tree[] nodeChildren = node.getChildren();
+				numChildren += nodeChildren.length;
+				for(int j = 0; j < nodeChildren.length; j++){
+					if(!ids.containsKey(nodeChildren[j])){
+						ids.put(nodeChildren[j], nodes.size());
+						nodes.add(nodeChildren[j]);
+						depths.add(depths.get(i) + 1);
+					}
+				}
+			}
+		}
+
+		CompiledTree compiled = new CompiledTree();
+		int numNodes = nodes.size();
+		compiled.attribute = new int[numNodes];
+		compiled.childOffset = new int[numNodes];
+		compiled.children = new int[numChildren];
+		compiled.leafClass = new double[numNodes];
+		compiled.defaultBranch = new int[numNodes];
+		compiled.cutOffset = new int[numNodes];
+		compiled.numCuts = new int[numNodes];
+		compiled.depth = new int[numNodes];
+		ArrayList<Double> cuts = new ArrayList<Double>();
+
+		int offset = 0;
+		for(int i = 0; i < numNodes; i++){
+			Tree node = nodes.get(i);
+			compiled.depth[i] = depths.get(i);
+			compiled.maxDepth = Math.max(compiled.maxDepth, compiled.depth[i]);
+			if(node.getAttribute() == null){
+				compiled.attribute[i] = -1;
+				compiled.leafClass[i] = node.getClassValue();
+			}else{
+				Tree[] nodeChildren = node.getChildren();
+				int treeAttribute = node.getAttribute().index();
+				int defaultValue = node.getProbs() == null ? 0 : maxIndex(node.getProbs());
+				double[] cutPoints = binding == null ? null : binding.cutPoints[treeAttribute];
+				int[] binValues = binding == null ? null : binding.binValues[treeAttribute];
+				if(node.getAttribute().isNumeric()){
+					//numeric split of the tree itself, less or equal goes to the first child
+					cutPoints = new double[] {node.getSplitPoint()};
+					binValues = null;
+				}
+
+				compiled.attribute[i] = binding == null ? treeAttribute : binding.inputAttribute[treeAttribute];
+				compiled.childOffset[i] = offset;
+				compiled.defaultBranch[i] = defaultValue;
+				if(cutPoints != null){
+					compiled.cutOffset[i] = cuts.size();
+					compiled.numCuts[i] = cutPoints.length;
+					for(int j = 0; j < cutPoints.length; j++){
+						cuts.add(cutPoints[j]);
+					}
+				}
+				for(int j = 0; j < nodeChildren.length; j++){
+					//children laid out by bin, so branch is the bin index
+					int value = binValues == null ? j : binValues[j];
+					compiled.children[offset++] = ids.get(nodeChildren[value]);
+					if(value == defaultValue){
+						compiled.defaultBranch[i] = j;
+					}
+				}
+			}
+		}
+
+		compiled.cuts = new double[cuts.size()];
+		for(int i = 0; i < compiled.cuts.length; i++){
+			compiled.cuts[i] = cuts.get(i);
+		}
+
+		return compiled;
+	}
+
+	/**
+	 * Classify instance
+	 * @param instance instance in the input attribute space
+	 * @return class value, missing value for empty leaf
+	 */
+	public double classify(Instance instance){
+		if(METRICS.isEnabled()){
+			long start = System.nanoTime();
+			int node = leaf(instance);
+			METRICS.recordInstance(System.nanoTime() - start, depth[node]);
+			return leafClass[node];
+		}
+		return leafClass[leaf(instance)];
+	}
+
+	private int leaf(Instance instance){
+		int node = 0;
+		while(attribute[node] >= 0){
+			node = child(node, instance.value(attribute[node]));
+		}
+		return node;
+	}
+
+	/**
+	 * Classify one row
+	 * @param row attribute values in the input attribute space, as weka Instance values
+	 * @return class value, missing value for empty leaf
+	 */
+	public double classify(double[] row){
+		if(METRICS.isEnabled()){
+			long start = System.nanoTime();
+			int node = leaf(row);
+			METRICS.recordInstance(System.nanoTime() - start, depth[node]);
+			return leafClass[node];
+		}
+		return leafClass[leaf(row)];
+	}
+
+	private int leaf(double[] row){
+		int node = 0;
+		while(attribute[node] >= 0){
+			node = child(node, row[attribute[node]]);
+		}
+		return node;
+	}
+
+	/**
+	 * Classify a block of rows, walking the tree one level at a time for all rows
+	 * @param rows attribute values in the input attribute space, as weka Instance values
+	 * @param predictions filled with class value index, -1 for empty leaf
+	 */
+	public void classify(double[][] rows, int[] predictions){
+		boolean measured = METRICS.isEnabled();
+		long startNanos = measured ? System.nanoTime() : 0;
+		int[] depthCounts = measured ? new int[maxDepth + 1] : null;
+		int[] nodes = new int[Math.min(BLOCK_SIZE, rows.length)];
+		for(int start = 0; start < rows.length; start += BLOCK_SIZE){
+			int end = Math.min(start + BLOCK_SIZE, rows.length);
+			Arrays.fill(nodes, 0);
+			boolean moved = true;
+			while(moved){
+				moved = false;
+				for(int i = start; i < end; i++){
+					int node = nodes[i - start];
+					if(attribute[node] >= 0){
+						nodes[i - start] = child(node, rows[i][attribute[node]]);
+						moved = true;
+					}
+				}
+			}
+			for(int i = start; i < end; i++){
+				predictions[i] = classIndex(leafClass[nodes[i - start]]);
+			}
+			if(measured){
+				countDepths(nodes, end - start, depthCounts);
+			}
+		}
+		if(measured){
+			recordDepths(depthCounts);
+			METRICS.recordBatch(System.nanoTime() - startNanos, rows.length);
+		}
+	}
+
+	/**
+	 * Classify a block of rows, walking the tree one level at a time for all rows
+	 * @param rows attribute values in the input attribute space, as weka Instance values
+	 * @param predictions filled with class value, missing value for empty leaf
+	 */
+	public void classify(double[][] rows, double[] predictions){
+		boolean measured = METRICS.isEnabled();
+		long startNanos = measured ? System.nanoTime() : 0;
+		int[] depthCounts = measured ? new int[maxDepth + 1] : null;
+		int[] nodes = new int[Math.min(BLOCK_SIZE, rows.length)];
+		for(int start = 0; start < rows.length; start += BLOCK_SIZE){
+			int end = Math.min(start + BLOCK_SIZE, rows.length);
+			Arrays.fill(nodes, 0);
+			boolean moved = true;
+			while(moved){
+				moved = false;
+				for(int i = start; i < end; i++){
+					int node = nodes[i - start];
+					if(attribute[node] >= 0){
+						nodes[i - start] = child(node, rows[i][attribute[node]]);
+						moved = true;
+					}
+				}
+			}
+			for(int i = start; i < end; i++){
+				predictions[i] = leafClass[nodes[i - start]];
+			}
+			if(measured){
+				countDepths(nodes, end - start, depthCounts);
+			}
+		}
+		if(measured){
+			recordDepths(depthCounts);
+			METRICS.recordBatch(System.nanoTime() - startNanos, rows.length);
+		}
+	}
+
+	/**
+	 * Classify a columnar block of rows, walking the tree one level at a time for all rows
+	 * @param block rows in the input attribute space
+	 * @param predictions filled with class value index, -1 for empty leaf
+	 */
+	public void classify(ColumnarDataset block, int[] predictions){
+		boolean measured = METRICS.isEnabled();
+		long startNanos = measured ? System.nanoTime() : 0;
+		int[] depthCounts = measured ? new int[maxDepth + 1] : null;
+		int numRows = block.numRows();
+		int[] nodes = new int[Math.min(BLOCK_SIZE, numRows)];
+		for(int start = 0; start < numRows; start += BLOCK_SIZE){
+			int end = Math.min(start + BLOCK_SIZE, numRows);
+			Arrays.fill(nodes, 0);
+			boolean moved = true;
+			while(moved){
+				moved = false;
+				for(int i = start; i < end; i++){
+					int node = nodes[i - start];
+					if(attribute[node] >= 0){
+						nodes[i - start] = child(node, block.value(attribute[node], i));
+						moved = true;
+					}
+				}
+			}
+			for(int i = start; i < end; i++){
+				predictions[i] = classIndex(leafClass[nodes[i - start]]);
+			}
+			if(measured){
+				countDepths(nodes, end - start, depthCounts);
+			}
+		}
+		if(measured){
+			recordDepths(depthCounts);
+			METRICS.recordBatch(System.nanoTime() - startNanos, numRows);
+		}
+	}
+
+	/**
+	 * @param node internal node
+	 * @param value value of the node attribute
+	 * @return child node followed by the value
+	 */
+	private int child(int node, double value){
+		int branch;
+		if(Instance.isMissingValue(value)){
+			branch = defaultBranch[node];
+		}else if(numCuts[node] == 0){
+			branch = (int) value;
+		}else{
+			//first cut point greater or equal to the value
+			int lo = cutOffset[node];
+			int hi = lo + numCuts[node];
+			while(lo < hi){
+				int mid = (lo + hi) >>> 1;
+				if(Double.compare(cuts[mid], value) < 0){
+					lo = mid + 1;
+				}else{
+					hi = mid;
+				}
+			}
+			branch = lo - cutOffset[node];
+		}
+		return children[childOffset[node] + branch];
+	}
+
+	/**
+	 * Tally the depth of the leaf reached by every row of a block, local to the batch
+	 */
+	private void countDepths(int[] nodes, int numRows, int[] depthCounts){
+		for(int i = 0; i < numRows; i++){
+			depthCounts[depth[nodes[i]]]++;
+		}
+	}
+
+	/**
+	 * Record the depth tally of a batch, one shared histogram update per depth instead of per row
+	 */
+	private static void recordDepths(int[] depthCounts){
+		for(int d = 0; d < depthCounts.length; d++){
+			if(depthCounts[d] > 0){
+				METRICS.recordDepth(d, depthCounts[d]);
+			}
+		}
+	}
+
+	private static int classIndex(double classValue){
+		return Instance.isMissingValue(classValue) ? -1 : (int) classValue;
+	}
+
+	public int numNodes(){
+		return attribute.length;
+	}
+
+	/**
+	 * @param array
+	 * @return array's index which hold highest value, first one on tie
+	 */
+	private static int maxIndex(double[] array){
+		int maxIndex = 0;
+
+		for (int i = 1; i < array.length; i++){
+			if (array[i] > array[maxIndex]){
+				maxIndex = i;
+			}
+		}
+
+		return maxIndex;
+	}
+}
@@ -0,0 +1,142 @@
+package weka.custom_classifier;
+
+import java.io.Serializable;
+
+import com.google.common.math.DoubleMath;
+
+/**
+ * Attribute value x class count table of one node, plus the class counts of instances with missing value
+ * Information gain is computed straight from the counts, no instances copy needed
+ */
+public class ContingencyTable implements Serializable {
+	private static final long serialVersionUID = 1L;
+	private int[][] counts; //counts[value][class]
+	private int[] valueTotals;
+	private int[] classTotals;
+	private int[] missingCounts; //missingCounts[class]
+	private int total;
+	private int missingTotal;
+
+	/**
+	 * @param numValues number of attribute values
+	 * @param numClasses number of class values
+	 */
+	public ContingencyTable(int numValues, int numClasses){
+		counts = new int[numValues][numClasses];
+		valueTotals = new int[numValues];
+		classTotals = new int[numClasses];
+		missingCounts = new int[numClasses];
+		total = 0;
+		missingTotal = 0;
+	}
+
+	/**
+	 * Count one instance
+	 * @param value attribute value index
+	 * @param classValue class value index
+	 */
+	public void add(int value, int classValue){
+		counts[value][classValue]++;
+		valueTotals[value]++;
+		classTotals[classValue]++;
+		total++;
+	}
+
+	/**
+	 * Count one instance with missing attribute value
+	 * @param classValue class value index
+	 */
+	public void addMissing(int classValue){
+		missingCounts[classValue]++;
+		missingTotal++;
+	}
+
+	public int getCount(int value, int classValue){
+		return counts[value][classValue];
+	}
+
+	public int[] getValueCounts(int value){
+		return counts[value];
+	}
+
+	public int getValueTotal(int value){
+		return valueTotals[value];
+	}
+
+	public int[] getClassTotals(){
+		return classTotals;
+	}
+
+	public int getTotal(){
+		return total;
+	}
+
+	public int[] getMissingCounts(){
+		return missingCounts;
+	}
+
+	/**
+	 * @return number of instances with missing attribute value, not included in getTotal()
+	 */
+	public int getMissingTotal(){
+		return missingTotal;
+	}
+
+	public int numValues(){
+		return valueTotals.length;
+	}
+
+	/**
+	 * @return entropy of the class distribution of all counted instances
+	 */
+	public double entropy(){
+		return entropy(classTotals, total);
+	}
+
+	/**
+	 * Calculate information gain
+	 * @return information gain of splitting the counted instances by attribute value
+	 */
+	public double informationGain(){
+		return informationGain(entropy(), total);
+	}
+
+	/**
+	 * Calculate information gain against a given parent entropy and size
+	 * @param parentEntropy entropy of the node
+	 * @param parentTotal number of instances of the node
+	 * @return information gain
+	 */
+	public double informationGain(double parentEntropy, int parentTotal){
+		double informationGain = parentEntropy;
+
+		for(int i = 0; i < valueTotals.length; i++)
+		{
+			double numInstancesOfLabel = (double) valueTotals[i];
+			informationGain -= numInstancesOfLabel / (double) parentTotal * entropy(counts[i], valueTotals[i]);
+		}
+
+		return informationGain;
+	}
+
+	/**
+	 * Entropy calculation
+	 * @param classCounts number of instances per class
+	 * @param total number of instances
+	 * @return entropy
+	 */
+	public static double entropy(int[] classCounts, int total){
+		double entropy = 0.0;
+
+		for(int i = 0; i < classCounts.length; i++)
+		{
+			if(classCounts[i] != 0)
+			{
+				double temp = (double) classCounts[i] / (double) total;
+				entropy -= temp * DoubleMath.log2(temp);
+			}
+		}
+
+		return entropy;
+	}
+}
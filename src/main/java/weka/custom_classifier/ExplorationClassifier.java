@@ -11,18 +11,27 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import weka.classifiers.Classifier;
 import weka.classifiers.Evaluation;
 import weka.classifiers.bayes.NaiveBayesUpdateable;
 import weka.classifiers.trees.J48;
+import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.Utils;
 import weka.core.converters.ArffLoader;
 import weka.core.converters.CSVLoader;
 import weka.core.converters.ConverterUtils;
+import weka.custom_classifier.Id3.CustomId3;
+import weka.custom_classifier.J48.CustomJ48;
 import weka.filters.Filter;
 import weka.filters.supervised.instance.Resample;
 import weka.filters.unsupervised.attribute.Remove;
@@ -33,11 +42,13 @@ import weka.filters.unsupervised.attribute.Remove;
  */
 public class ExplorationClassifier {
     
-    private Instances dataTrain;
+    private Instances dataTrain; //built from dataTrainColumns at first use after a columnar load
     private Instances dataTrainStructure;
+    private ColumnarDataset dataTrainColumns; //mapped columns of a columnar load, instances are only built when a learner needs them
     private NaiveBayesUpdateable naiveBayes;
     private J48 decisionTree;
-    private int lastBuiltClassifier; //1 for Naive Bayes, 2 for J48, 0 for not yet build
+    private Classifier customTree; //CustomJ48 or CustomId3
+    private int lastBuiltClassifier; //1 for Naive Bayes, 2 for J48, 3 for custom J48, 4 for custom ID3, 0 for not yet build
     private int classAttributeIndex;
     
     /**
@@ -48,7 +59,9 @@ public class ExplorationClassifier {
         lastBuiltClassifier = 0;
         decisionTree = null;
         naiveBayes = null;
+        customTree = null;
         dataTrain = null;
+        dataTrainColumns = null;
         classAttributeIndex = 0;
     }
     
@@ -57,7 +70,7 @@ public class ExplorationClassifier {
      */
     public void printDataTrain()
     {
-        System.out.println(dataTrain.toString());
+        System.out.println(dataTrain().toString());
         System.out.println(dataTrainStructure.toString());
     }
     
@@ -70,7 +83,9 @@ public class ExplorationClassifier {
             System.out.println("No hypothesis yet");
         else if (this.lastBuiltClassifier==1)
             System.out.println(naiveBayes.toString());
-        else System.out.println(decisionTree.toString());
+        else if (this.lastBuiltClassifier==2)
+            System.out.println(decisionTree.toString());
+        else System.out.println(customTree.toString());
     }
     
     /**
@@ -80,13 +95,34 @@ public class ExplorationClassifier {
     public void setDataTrainClassAttributeIndex(int classAttributeIndex)
     {
         this.classAttributeIndex = classAttributeIndex;
-        dataTrain.setClassIndex(classAttributeIndex);
+        if (dataTrain != null)
+            dataTrain.setClassIndex(classAttributeIndex);
         dataTrainStructure.setClassIndex(classAttributeIndex);
+        if (dataTrainColumns != null) {
+            try {
+                dataTrainColumns = dataTrainColumns.withClassIndex(classAttributeIndex);
+            } catch (IllegalArgumentException ex) { //class the columns can not hold, learners get instances
+                dataTrain();
+                dataTrainColumns = null;
+            }
+        }
+    }
+    
+    /**
+     * @return training instances, built from the columns at first use after a columnar load
+     */
+    private Instances dataTrain()
+    {
+        if (dataTrain == null && dataTrainColumns != null) {
+            dataTrain = dataTrainColumns.toInstances();
+            dataTrain.setClassIndex(dataTrainStructure.classIndex());
+        }
+        return dataTrain;
     }
     
     /**
     * @param filePath the file path of dataset
-    * @param mode the mode=1 for arff, mode=2 for csv
+    * @param mode the mode=1 for arff, mode=2 for csv, mode=3 for columnar file (see saveDatasetColumnar), mode=4 for arff parsed on all cores
     */
     public void loadDataset(String filePath, int mode)
     { 
@@ -97,6 +133,7 @@ public class ExplorationClassifier {
                 loader.setSource(new File(filePath));
                 dataTrain = loader.getDataSet();
                 dataTrainStructure = loader.getStructure();
+                dataTrainColumns = null;
             } catch (IOException ex) {
                 System.out.println("File not Found!");
             }
@@ -108,6 +145,29 @@ public class ExplorationClassifier {
                 loader.setSource(new File(filePath));
                 dataTrain = loader.getDataSet();
                 dataTrainStructure = loader.getStructure();
+                dataTrainColumns = null;
+            } catch (IOException ex) {
+                System.out.println("File not Found!");
+            }
+        }
+        else if (mode==3) //load columnar file, memory mapped, no parsing, no instance until a learner needs them
+        {
+            try {
+                int[] classIndex = new int[1];
+                dataTrainColumns = ColumnarFile.read(new File(filePath), classIndex);
+                dataTrainStructure = new Instances(dataTrainColumns.header(), 0);
+                dataTrainStructure.setClassIndex(classIndex[0]);
+                dataTrain = null;
+            } catch (IOException ex) {
+                System.out.println("File not Found!");
+            }
+        }
+        else if (mode==4) //load arff in parallel
+        {
+            try {
+                dataTrain = loadParallel(filePath, mode);
+                dataTrainStructure = new Instances(dataTrain, 0);
+                dataTrainColumns = null;
             } catch (IOException ex) {
                 System.out.println("File not Found!");
             }
@@ -115,6 +175,49 @@ public class ExplorationClassifier {
         else System.out.println("Mode not Supported!");
     }
     
+    /**
+     * Parse a data file on all cores
+     * @param filePath the file path of dataset
+     * @param mode the mode=4 for arff, mode=5 for csv with the attributes of the loaded training data or of the loaded custom tree model
+     * @return Instances, class index not set
+     * @throws IOException 
+     */
+    private Instances loadParallel(String filePath, int mode) throws IOException
+    {
+        ParallelLoader loader = new ParallelLoader(Runtime.getRuntime().availableProcessors());
+        if (mode==4)
+            return loader.loadArff(new File(filePath), -1).toInstances();
+        Instances structure;
+        if (dataTrainStructure != null)
+            structure = new Instances(dataTrainStructure, 0);
+        else if (lastBuiltClassifier==3 && customTree != null)
+            structure = ((CustomJ48) customTree).trainingHeader();
+        else if (lastBuiltClassifier==4 && customTree != null)
+            structure = ((CustomId3) customTree).trainingHeader();
+        else
+            throw new IOException("CSV parsed on all cores needs the attributes of loaded training data or of a loaded custom tree model");
+        structure.setClassIndex(-1);
+        return loader.loadCsv(new File(filePath), structure).toInstances();
+    }
+    
+    /**
+     * Save the loaded dataset as a binary columnar file, to be loaded again with mode=3
+     * @param filePath the file path of the columnar file
+     */
+    public void saveDatasetColumnar(String filePath)
+    {
+        try {
+            if (dataTrainColumns != null)
+                ColumnarFile.write(dataTrainColumns, new File(filePath));
+            else
+                ColumnarFile.write(dataTrain, new File(filePath));
+        } catch (IOException ex) {
+            Logger.getLogger(ExplorationClassifier.class.getName()).log(Level.SEVERE, null, ex);
+        } catch (IllegalArgumentException ex) {
+            System.out.println(ex.getMessage());
+        }
+    }
+    
     /**
      * Delete attribute from index Range selection
      * @param attrIndexRange, the attribute index range selection which want to be removed
@@ -125,8 +228,9 @@ public class ExplorationClassifier {
             Remove remove = new Remove();
             remove.setAttributeIndices(attrIndexRange);
             remove.setInvertSelection(false);
-            remove.setInputFormat(dataTrain);
-            dataTrain = Filter.useFilter(dataTrain, remove);
+            remove.setInputFormat(dataTrain());
+            dataTrain = Filter.useFilter(dataTrain(), remove);
+            dataTrainColumns = null;
             dataTrainStructure = Filter.useFilter(dataTrainStructure, remove);
         } catch (Exception ex) {
             System.out.println("Cannot remove attribute!");
@@ -143,8 +247,9 @@ public class ExplorationClassifier {
         try {
             Resample sampler = new Resample();
             sampler.setOptions(weka.core.Utils.splitOptions(resampleOptions));
-            sampler.setInputFormat(dataTrain);
-            dataTrain = Filter.useFilter(dataTrain, sampler);
+            sampler.setInputFormat(dataTrain());
+            dataTrain = Filter.useFilter(dataTrain(), sampler);
+            dataTrainColumns = null;
         } catch (Exception ex) {
             Logger.getLogger(ExplorationClassifier.class.getName()).log(Level.SEVERE, null, ex);
         }
@@ -160,7 +265,7 @@ public class ExplorationClassifier {
             this.lastBuiltClassifier = 1;  
             
             // split data between data for training and testing
-            Instances[] trainTest = this.splitData(evalMode, percentageSplit, dataTrain);
+            Instances[] trainTest = this.splitData(evalMode, percentageSplit, dataTrain());
             
             // train NaiveBayes
             naiveBayes = new NaiveBayesUpdateable();
@@ -189,7 +294,7 @@ public class ExplorationClassifier {
         try {
             this.lastBuiltClassifier = 2;
             // split data for training and testing
-            Instances[] trainTest = this.splitData(evalMode, percentageSplit, dataTrain);
+            Instances[] trainTest = this.splitData(evalMode, percentageSplit, dataTrain());
             
             // train decision tree
             decisionTree = new J48(); // new instance of tree
@@ -204,6 +309,54 @@ public class ExplorationClassifier {
         }
     }
     
+    /**
+     * 
+     * @param treeType the treeType=3 for custom J48, treeType=4 for custom ID3
+     * @param evalMode the evalMode=1 for 10-fold cross, evalMode=2 for percentageSplit
+     * @param percentageSplit the percentageSplit for training and testing, percentageSplit*dataTrain used for training, the remaining used for testing
+     */
+    public void buildClassifierCustomTree(int treeType, int evalMode, double percentageSplit)
+    {
+        try {
+            this.lastBuiltClassifier = treeType;
+            Instances test;
+            if (dataTrainColumns != null) { //columnar load, the tree reads the columns, instances are only built to evaluate
+                int numRows = dataTrainColumns.numRows();
+                int trainSize = evalMode==2 ? (int) Math.round(numRows * percentageSplit) : numRows;
+                ColumnarDataset train = dataTrainColumns.range(0, trainSize);
+                if (treeType==3) {
+                    CustomJ48 tree = new CustomJ48();
+                    tree.buildClassifier(train);
+                    customTree = tree;
+                }
+                else {
+                    CustomId3 tree = new CustomId3();
+                    tree.buildClassifier(train);
+                    customTree = tree;
+                }
+                test = evalMode==2 ? dataTrainColumns.range(trainSize, numRows).toInstances() : dataTrain();
+            }
+            else {
+                // split data for training and testing
+                Instances[] trainTest = this.splitData(evalMode, percentageSplit, dataTrain);
+                
+                // train custom tree, on a copy as the trees delete instances with missing class
+                if (treeType==3)
+                    customTree = new CustomJ48();
+                else
+                    customTree = new CustomId3();
+                customTree.buildClassifier(new Instances(trainTest[0]));
+                test = trainTest[1];
+            }
+            
+            // evaluate custom tree
+            if (test.numInstances()>0)
+                trainingEvaluation(customTree, evalMode, test, percentageSplit);
+        } catch (Exception ex) {
+            Logger.getLogger(ExplorationClassifier.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+    
     /**
      * Split data for training and testing
      * @param evalMode the evalMode=1 for 10-fold cross, evalMode=2 for percentageSplit
@@ -239,7 +392,7 @@ public class ExplorationClassifier {
         try {
             Evaluation eval = new Evaluation(test);
             if (evalMode==1) { //10 fold cross
-                eval.crossValidateModel(cls, test, 10, new Random(1));
+                crossValidateModel(eval, cls, test, 10, new Random(1));
                 System.out.println(eval.toSummaryString("\nEvaluation Results 10-fold-cross", false));
             }
             else if (evalMode==2) { //percentage split
@@ -251,16 +404,91 @@ public class ExplorationClassifier {
         }
     }
     
+    /**
+     * k-fold cross validation, every fold is trained and tested on its own core
+     * Folds are drawn as Evaluation.crossValidateModel draws them and the predictions of the folds are merged into eval in fold order,
+     * so the result is the same as the sequential cross validation
+     * @param eval the evaluation the folds are merged into
+     * @param cls the classifier, copied for every fold
+     * @param data the data to cross validate on
+     * @param numFolds the number of folds
+     * @param random the random number generator for randomizing the data
+     * @throws Exception 
+     */
+    private void crossValidateModel(Evaluation eval, Classifier cls, Instances data, int numFolds, Random random) throws Exception
+    {
+        data = new Instances(data);
+        data.randomize(random);
+        if (data.classAttribute().isNominal())
+            data.stratify(numFolds);
+        
+        // draw the folds in order, they share the random number generator
+        Classifier[] copies = Classifier.makeCopies(cls, numFolds);
+        Instances[] train = new Instances[numFolds];
+        Instances[] test = new Instances[numFolds];
+        ArrayList<FoldTask> tasks = new ArrayList<FoldTask>();
+        for (int i=0; i<numFolds; i++) {
+            train[i] = data.trainCV(numFolds, i, random);
+            test[i] = data.testCV(numFolds, i);
+            tasks.add(new FoldTask(copies[i], train[i], test[i]));
+        }
+        
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(numFolds, Runtime.getRuntime().availableProcessors()));
+        try {
+            List<Future<double[][]>> distributions = pool.invokeAll(tasks);
+            for (int i=0; i<numFolds; i++) {
+                double[][] dist = distributions.get(i).get();
+                eval.setPriors(train[i]);
+                for (int j=0; j<test[i].numInstances(); j++)
+                    eval.evaluateModelOnceAndRecordPrediction(dist[j], test[i].instance(j));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+    
+    /**
+     * Train one fold and predict the class distribution of its test instances
+     */
+    private static class FoldTask implements Callable<double[][]>
+    {
+        private Classifier cls;
+        private Instances train;
+        private Instances test;
+        
+        FoldTask(Classifier cls, Instances train, Instances test)
+        {
+            this.cls = cls;
+            this.train = train;
+            this.test = test;
+        }
+        
+        @Override
+        public double[][] call() throws Exception
+        {
+            cls.buildClassifier(train);
+            double[][] dist = new double[test.numInstances()][];
+            for (int i=0; i<test.numInstances(); i++) {
+                Instance classMissing = (Instance) test.instance(i).copy();
+                classMissing.setDataset(test);
+                classMissing.setClassMissing();
+                dist[i] = cls.distributionForInstance(classMissing);
+            }
+            return dist;
+        }
+    }
+    
     /**
      * Test model using supplied test set
      * @param dataTestPath dataTest file path
-     * @param mode the mode=1 for arff, 2 for CSV
+     * @param mode the mode=1 for arff, 2 for CSV, 4 for arff parsed on all cores, 5 for CSV parsed on all cores
      * @param classAttributeIndex for the dataTest attributeIndex
      */
     public void testModelSuppliedTest(String dataTestPath, int mode, int classAttributeIndex)
     {
         try {
             Instances dataTest = null;
+            long loadStart = System.nanoTime();
             if (mode==1) { //arff file
                 ArffLoader loader = new ArffLoader();
                 loader.setSource(new File(dataTestPath));
@@ -271,6 +499,10 @@ public class ExplorationClassifier {
                 loader.setSource(new File(dataTestPath));
                 dataTest = loader.getDataSet();
             }
+            else if (mode==4 || mode==5) { //parallel parsing
+                dataTest = loadParallel(dataTestPath, mode);
+            }
+            recordLoad(loadStart, dataTest, mode);
             dataTest.setClassIndex(classAttributeIndex);
             
             Evaluation eval = new Evaluation(dataTest);
@@ -279,10 +511,14 @@ public class ExplorationClassifier {
                 cls = naiveBayes;
             else if (this.lastBuiltClassifier==2)
                 cls = decisionTree;
+            else if (this.lastBuiltClassifier>=3)
+                cls = customTree;
             
             // evaluation using supplied test set (all)
             eval.evaluateModel(cls, dataTest);
             System.out.println(eval.toSummaryString("\nTesting Results Using Supplied Test Set", false));
+            if (ScoringMetrics.get().isEnabled())
+                ScoringMetrics.get().dump(System.out);
         } catch (Exception ex) {
             Logger.getLogger(ExplorationClassifier.class.getName()).log(Level.SEVERE, null, ex);
         }
@@ -310,11 +546,19 @@ public class ExplorationClassifier {
                 Logger.getLogger(ExplorationClassifier.class.getName()).log(Level.SEVERE, null, ex);
             }
         }
+        else {
+            try {
+                //compact model file, holds the class attribute index itself
+                ModelFile.write(customTree, new File(customTree.getClass().toString()+".model"));
+            } catch (IOException ex) {
+                Logger.getLogger(ExplorationClassifier.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
     }
     
     /**
      * 
-     * @param clsNum the classifier, 1 for naiveBayes, 2 for decisionTree 
+     * @param clsNum the classifier, 1 for naiveBayes, 2 for decisionTree, 3 for custom J48, 4 for custom ID3
      */
     public void loadModel(int clsNum)
     {
@@ -337,6 +581,26 @@ public class ExplorationClassifier {
                 Logger.getLogger(ExplorationClassifier.class.getName()).log(Level.SEVERE, null, ex);
             }
         }
+        else if (clsNum==3) { //custom J48
+            try {
+                this.lastBuiltClassifier = 3;
+                CustomJ48 tree = (CustomJ48) ModelFile.read(new File(CustomJ48.class.toString()+".model"));
+                classAttributeIndex = tree.classIndex();
+                customTree = tree;
+            } catch (Exception ex) {
+                Logger.getLogger(ExplorationClassifier.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+        else if (clsNum==4) { //custom ID3
+            try {
+                this.lastBuiltClassifier = 4;
+                CustomId3 tree = (CustomId3) ModelFile.read(new File(CustomId3.class.toString()+".model"));
+                classAttributeIndex = tree.classIndex();
+                customTree = tree;
+            } catch (Exception ex) {
+                Logger.getLogger(ExplorationClassifier.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
     }
     
     /**
@@ -354,17 +618,18 @@ public class ExplorationClassifier {
     /**
      * Classify unlabeled data from external file
      * @param filePath the unlabeled data file
-     * @param mode the mode=1 for arff, 2 for CSV
+     * @param mode the mode=1 for arff, 2 for CSV, 4 for arff parsed on all cores, 5 for CSV parsed on all cores
      * @param classAttrIdx class attribute index for unlabeled data
      */
     public void classifyUnlabeledData(String filePath, int mode, int classAttrIdx)
     {
         Instances unlabeled = null, labeled = null;
-        if (mode!=1 && mode!=2)
+        if (mode!=1 && mode!=2 && mode!=4 && mode!=5)
         {
             System.out.println("Mode unsupported!");
         }
         else {
+            long loadStart = System.nanoTime();
             if (mode==1) //load arff
             {
                 try {
@@ -375,7 +640,7 @@ public class ExplorationClassifier {
                     System.out.println("File not Found!");
                 }
             }
-            else //load csv
+            else if (mode==2) //load csv
             {
                 try {
                     CSVLoader loader = new CSVLoader();
@@ -385,7 +650,18 @@ public class ExplorationClassifier {
                     System.out.println("File not Found!");
                 }
             }
+            else //parallel parsing
+            {
+                try {
+                    unlabeled = loadParallel(filePath, mode);
+                } catch (IOException ex) {
+                    System.out.println(ex.getMessage());
+                }
+            }
+            if (unlabeled == null) //not loaded, already reported
+                return;
             try {
+                recordLoad(loadStart, unlabeled, mode);
                 unlabeled.setClassIndex(classAttrIdx);
                 labeled = new Instances(unlabeled);
                 
@@ -395,6 +671,8 @@ public class ExplorationClassifier {
                     cls = naiveBayes;
                 else if (this.lastBuiltClassifier==2)
                     cls = decisionTree;
+                else if (this.lastBuiltClassifier>=3)
+                    cls = customTree;
                 
                 //give label to unlabeled data
                 for (int i = 0; i < unlabeled.numInstances(); i++) {
@@ -406,12 +684,26 @@ public class ExplorationClassifier {
                 System.out.println("Classified Instances Label");
                 ConverterUtils.DataSink.write(System.out, labeled);
                 System.out.println();
+                if (ScoringMetrics.get().isEnabled())
+                    ScoringMetrics.get().dump(System.out);
             } catch (Exception ex) {
                 Logger.getLogger(ExplorationClassifier.class.getName()).log(Level.SEVERE, null, ex);
             }
         }
     }
     
+    /**
+     * Record the load of a data file read by weka's loaders, the parallel loader records its own
+     * @param loadStart System.nanoTime() before loading
+     * @param data loaded data
+     * @param mode the mode=1 for arff, 2 for CSV, 4 for arff parsed on all cores, 5 for CSV parsed on all cores
+     */
+    private void recordLoad(long loadStart, Instances data, int mode)
+    {
+        if (ScoringMetrics.get().isEnabled() && (mode==1 || mode==2))
+            ScoringMetrics.get().recordLoad(System.nanoTime() - loadStart, data.numInstances());
+    }
+    
     /**
      * 
      * @param cls the classifier
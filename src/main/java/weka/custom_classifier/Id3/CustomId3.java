@@ -1,11 +1,17 @@
 package weka.custom_classifier.Id3;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Enumeration;
-
-import com.google.common.math.DoubleMath;
+import java.util.IdentityHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import weka.classifiers.Classifier;
 import weka.classifiers.trees.Id3;
@@ -14,14 +20,31 @@ import weka.core.Capabilities;
 import weka.core.Capabilities.Capability;
 import weka.core.Instance;
 import weka.core.Instances;
+import weka.core.WekaException;
 import weka.core.converters.ArffLoader;
+import weka.custom_classifier.AttributeCountTask;
+import weka.custom_classifier.BuildMetrics;
+import weka.custom_classifier.ColumnarDataset;
+import weka.custom_classifier.CompiledTree;
+import weka.custom_classifier.ContingencyTable;
+import weka.custom_classifier.ModelFile;
+import weka.custom_classifier.NodeStatistics;
+import weka.custom_classifier.RowPartition;
 import weka.custom_classifier.Tree;
 
 public class CustomId3 extends Classifier
 {
 	/** For serialization */
 	private static final long serialVersionUID = 1L;
+	private static final Logger LOGGER = Logger.getLogger(CustomId3.class.getName());
+	private static final BuildMetrics METRICS = BuildMetrics.get();
 	private Tree decisionTree;
+	private CompiledTree compiledTree; //flattened decisionTree used for inference
+	private Instances trainingHeader;
+	private int parallelThreshold; //nodes with more rows score attributes concurrently, 0 for sequential
+	private int subtreeCutoff; //nodes with more rows build their children concurrently, 0 for sequential
+	private int numThreads;
+	private transient ForkJoinPool pool;
 	
 	/**
 	 * Default Constructor
@@ -29,6 +52,27 @@ public class CustomId3 extends Classifier
 	public CustomId3()
 	{
 		decisionTree = new Tree();
+		parallelThreshold = 0;
+		subtreeCutoff = 0;
+		numThreads = Runtime.getRuntime().availableProcessors();
+	}
+	
+	/**
+	 * @param parallelThreshold nodes with more rows than this score their candidate attributes concurrently, 0 to always score sequentially
+	 * @param numThreads number of threads used for concurrent scoring
+	 */
+	public void setParallelOption(int parallelThreshold, int numThreads)
+	{
+		this.parallelThreshold = parallelThreshold;
+		this.numThreads = numThreads;
+	}
+	
+	/**
+	 * @param subtreeCutoff nodes with more rows than this build their child subtrees concurrently, 0 to always build sequentially
+	 */
+	public void setSubtreeParallelOption(int subtreeCutoff)
+	{
+		this.subtreeCutoff = subtreeCutoff;
 	}
 	
 	/**
@@ -57,8 +101,212 @@ public class CustomId3 extends Classifier
 		classifierCapabilities().testWithFail(data);
 		
 		data.deleteWithMissingClass();
+		build(new ColumnarDataset(data));
+	}
+	
+	/**
+	 * Build ID3 Classifier straight from columns, as ColumnarFile.read maps them, no instance is created
+	 * @param data training data in columns, class index set, not modified, rows with missing class are left out
+	 */
+	public void buildClassifier(ColumnarDataset data) throws Exception 
+	{
+		classifierCapabilities().testWithFail(data.header());
+		
+		build(data.withoutMissingClass());
+	}
+	
+	/**
+	 * @param columns training data in columns, no missing class
+	 */
+	private void build(ColumnarDataset columns)
+	{
+		trainingHeader = new Instances(columns.header(), 0);
+		decisionTree = new Tree();
         ArrayList<Attribute> selectedAttr = new ArrayList();
-		generateTree(data, decisionTree, selectedAttr);
+		int[] rows = RowPartition.identity(columns.numRows());
+		
+		METRICS.recordBuild();
+		BuildMetrics.PhaseTimer timer = METRICS.start(BuildMetrics.GROW);
+		if (parallelThreshold > 0 || subtreeCutoff > 0)
+			pool = new ForkJoinPool(numThreads);
+		try {
+			generateTree(columns, rows, 0, rows.length, NodeStatistics.count(columns, rows, 0, rows.length), decisionTree, selectedAttr);
+		} finally {
+			if (pool != null)
+				pool.shutdown();
+			pool = null;
+		}
+		timer.stop();
+		METRICS.recordDepth(decisionTree);
+		compiledTree = CompiledTree.compile(decisionTree);
+	}
+	
+	/**
+	 * Build ID3 Classifier without loading the dataset, one pass over the file per tree level
+	 * Every row is routed to its frontier node and only the count tables of the frontier are kept,
+	 * the tree is the same as buildClassifier on the whole dataset
+	 * @param arffFile training data
+	 * @param classIndex class attribute index
+	 */
+	public void buildClassifier(File arffFile, int classIndex) throws Exception
+	{
+		ArffLoader loader = new ArffLoader();
+		loader.setSource(arffFile);
+		Instances header = loader.getStructure();
+		header.setClassIndex(classIndex);
+		classifierCapabilities().testWithFail(header);
+		
+		trainingHeader = header;
+		decisionTree = new Tree();
+		ArrayList<FrontierNode> frontier = new ArrayList<FrontierNode>();
+		frontier.add(new FrontierNode(header, decisionTree, new ArrayList<Attribute>()));
+		
+		METRICS.recordBuild();
+		BuildMetrics.PhaseTimer timer = METRICS.start(BuildMetrics.GROW);
+		while(!frontier.isEmpty()){
+			countFrontier(arffFile, header, frontier);
+			
+			ArrayList<FrontierNode> nextFrontier = new ArrayList<FrontierNode>();
+			for(int i = 0; i < frontier.size(); i++){
+				expandNode(header, frontier.get(i), nextFrontier);
+			}
+			frontier = nextFrontier;
+		}
+		timer.stop();
+		METRICS.recordDepth(decisionTree);
+		compiledTree = CompiledTree.compile(decisionTree);
+	}
+	
+	/**
+	 * Pending node of the level-wise build, with the counts of the rows reaching it
+	 */
+	private static class FrontierNode
+	{
+		private Tree tree;
+		private ArrayList<Attribute> selectedAttr;
+		private int[] candidates;
+		private ContingencyTable[] tables;
+		private int[] classCounts;
+		
+		FrontierNode(Instances header, Tree tree, ArrayList<Attribute> selectedAttr)
+		{
+			this.tree = tree;
+			this.selectedAttr = selectedAttr;
+			tables = new ContingencyTable[header.numAttributes()];
+			classCounts = new int[header.numClasses()];
+			
+			ArrayList<Integer> candidateList = new ArrayList<Integer>();
+			Enumeration attributes = header.enumerateAttributes();
+			while(attributes.hasMoreElements()){
+				Attribute attribute = (Attribute) attributes.nextElement();
+				if (!selectedAttr.contains(attribute)) {
+					tables[attribute.index()] = new ContingencyTable(attribute.numValues(), header.numClasses());
+					candidateList.add(attribute.index());
+				}
+			}
+			candidates = new int[candidateList.size()];
+			for(int i = 0; i < candidates.length; i++){
+				candidates[i] = candidateList.get(i);
+			}
+		}
+	}
+	
+	/**
+	 * Stream the file once, counting every row into the frontier node it reaches
+	 * @param arffFile training data
+	 * @param header dataset structure with class index
+	 * @param frontier pending nodes of the current level
+	 */
+	private void countFrontier(File arffFile, Instances header, ArrayList<FrontierNode> frontier) throws Exception
+	{
+		IdentityHashMap<Tree, FrontierNode> pending = new IdentityHashMap<Tree, FrontierNode>();
+		for(int i = 0; i < frontier.size(); i++){
+			pending.put(frontier.get(i).tree, frontier.get(i));
+		}
+		
+		ArffLoader loader = new ArffLoader();
+		loader.setSource(arffFile);
+		Instances structure = loader.getStructure();
+		structure.setClassIndex(header.classIndex());
+		
+		Instance instance;
+		while((instance = loader.getNextInstance(structure)) != null){
+			if(instance.classIsMissing()){
+				continue;
+			}
+			
+			Tree node = decisionTree;
+			while(node.getAttribute() != null){
+				node = node.getChild((int) instance.value(node.getAttribute()));
+			}
+			FrontierNode frontierNode = pending.get(node);
+			if(frontierNode == null){
+				continue; //finished leaf
+			}
+			
+			int classValue = (int) instance.classValue();
+			frontierNode.classCounts[classValue]++;
+			for(int i = 0; i < frontierNode.candidates.length; i++){
+				int att = frontierNode.candidates[i];
+				if(instance.isMissing(att)){
+					throw new WekaException("Id3: Cannot handle missing values!");
+				}
+				frontierNode.tables[att].add((int) instance.value(att), classValue);
+			}
+		}
+	}
+	
+	/**
+	 * Choose the split of a counted frontier node, as generateTree does from the rows
+	 * @param header dataset structure with class index
+	 * @param node counted frontier node
+	 * @param nextFrontier filled with the children to count on the next pass
+	 */
+	private void expandNode(Instances header, FrontierNode node, ArrayList<FrontierNode> nextFrontier)
+	{
+		Tree tree = node.tree;
+		NodeStatistics stats = new NodeStatistics(node.classCounts);
+		int numInstances = stats.getTotal();
+		
+		//handle empty leaves
+		if(numInstances == 0){
+			METRICS.recordNode(0, 0);
+			tree.setAttribute(null);
+			tree.setClassValue(Instance.missingValue());
+			return;
+		}
+		
+		double[] infoGains = new double[header.numAttributes()];
+		double entropy = stats.getEntropy();
+		
+		//information gain calculation
+		for(int i = 0; i < node.candidates.length; i++){
+			int att = node.candidates[i];
+			infoGains[att] = node.tables[att].informationGain(entropy, numInstances);
+			if(LOGGER.isLoggable(Level.FINEST))
+				LOGGER.finest(header.attribute(att).name() + " gain = " + infoGains[att]);
+		}
+		METRICS.recordNode(numInstances, node.candidates.length);
+		
+		Attribute highestIGAtt = header.attribute(maxIndex(infoGains));
+		
+		if(stats.isPure() || node.selectedAttr.contains(highestIGAtt)
+				|| highestIGAtt.index() == header.classIndex() || Double.compare(infoGains[highestIGAtt.index()], 0.0) == 0){ // leaf
+			tree.setAttribute(null);
+			tree.setClassValue(stats.majorityClass());
+			tree.setClassAttribute(header.classAttribute());
+		}else{ //children counted on the next pass
+			ArrayList<Attribute> childSelectedAttr = new ArrayList<Attribute>(node.selectedAttr);
+			childSelectedAttr.add(highestIGAtt);
+			Tree[] children = new Tree[highestIGAtt.numValues()];
+			
+			for(int i = 0; i < children.length; i++){
+				children[i] = new Tree();
+				nextFrontier.add(new FrontierNode(header, children[i], childSelectedAttr));
+			}
+			tree.addChildren(children);
+			tree.setAttribute(highestIGAtt);
+		}
 	}
 	
 	/**
@@ -66,9 +314,58 @@ public class CustomId3 extends Classifier
 	 */
 	public double classifyInstance(Instance instance)
 	{
+		if (compiledTree != null)
+			return compiledTree.classify(instance);
 		return classifyInstance(instance, decisionTree);
 	}
 	
+	/**
+	 * @return tree as grown
+	 */
+	Tree decisionTree()
+	{
+		return decisionTree;
+	}
+	
+	/**
+	 * Classify a block of rows
+	 * @param rows attribute values of each row, as weka Instance values
+	 * @param predictions filled with class value index of each row, -1 for empty leaf
+	 */
+	public void classifyInstances(double[][] rows, int[] predictions)
+	{
+		checkBuilt();
+		compiledTree.classify(rows, predictions);
+	}
+	
+	/**
+	 * Classify a block of rows
+	 * @param rows attribute values of each row, as weka Instance values
+	 * @param predictions filled with class value of each row, missing value for empty leaf
+	 */
+	public void classifyInstances(double[][] rows, double[] predictions)
+	{
+		checkBuilt();
+		compiledTree.classify(rows, predictions);
+	}
+	
+	/**
+	 * Classify a columnar block of rows
+	 * @param block rows to classify
+	 * @param predictions filled with class value index of each row, -1 for empty leaf
+	 */
+	public void classifyInstances(ColumnarDataset block, int[] predictions)
+	{
+		checkBuilt();
+		compiledTree.classify(block, predictions);
+	}
+	
+	private void checkBuilt()
+	{
+		if (compiledTree == null)
+			throw new IllegalStateException("Id3: No model built yet.");
+	}
+	
 	/**
 	 * Classify instance from certain node of decisionTree
 	 * @param instance
@@ -86,106 +383,126 @@ public class CustomId3 extends Classifier
 	
 	/**
 	 * Generate ID3 (recursive tree)
-	 * @param data training data
+	 * @param data training data in columns, shared by every node
+	 * @param rows row indexes into data
+	 * @param from first index of the node rows
+	 * @param to last index of the node rows, exclusive
+	 * @param stats class statistics of the node rows, from the split of the parent
 	 * @param tree node
-         * @param selectedAttr already selected attribute at parents node
+         * @param selectedAttr already selected attribute at parents node, not modified
 	 */
-	public void generateTree(Instances data, Tree tree, ArrayList<Attribute> selectedAttr)
+	public void generateTree(ColumnarDataset data, int[] rows, int from, int to, NodeStatistics stats, Tree tree, ArrayList<Attribute> selectedAttr)
 	{
+		int numInstances = to - from;
+		
 		//handle empty leaves
-		if(data.numInstances() == 0){
+		if(numInstances == 0){
+			METRICS.recordNode(0, 0);
 			tree.setAttribute(null);
 			tree.setClassValue(Instance.missingValue());
 			return;
 		}
 		
-		Enumeration attributes = data.enumerateAttributes();
+		Enumeration attributes = data.header().enumerateAttributes();
 		double[] infoGains = new double[data.numAttributes()];
+		ContingencyTable[] tables = contingencyTables(data, rows, from, to, selectedAttr);
+		double entropy = stats.getEntropy();
 	
 		//information gain calculation
+		int numGainEvaluations = 0;
 		while(attributes.hasMoreElements()){
 			Attribute attribute = (Attribute) attributes.nextElement();
             if (!selectedAttr.contains(attribute)) {
-                infoGains[attribute.index()] = informationGain(data, attribute);
-                System.out.println(infoGains[attribute.index()]);
+                infoGains[attribute.index()] = tables[attribute.index()].informationGain(entropy, numInstances);
+                numGainEvaluations++;
+                if (LOGGER.isLoggable(Level.FINEST))
+                    LOGGER.finest(attribute.name() + " gain = " + infoGains[attribute.index()]);
             }else 
             	infoGains[attribute.index()]=0.0;
 		}
+		METRICS.recordNode(numInstances, numGainEvaluations);
 		
 		Attribute highestIGAtt = data.attribute(maxIndex(infoGains));
 		
 		//build decision tree
 		tree.setAttribute(highestIGAtt);
 		
-		//leaf detection
-		if(isClassified(data)){ // leaf
+		//leaf detection, also when every attribute is already used on the path or no attribute gains anything
+		//(the highest gain may then be the class attribute, which has no column to partition)
+		if(stats.isPure() || selectedAttr.contains(highestIGAtt)
+				|| highestIGAtt.index() == data.classIndex() || Double.compare(infoGains[highestIGAtt.index()], 0.0) == 0){ // leaf
 			tree.setAttribute(null);
-			double[] distribution = new double[data.numClasses()];
-			Enumeration instances = data.enumerateInstances();
-			
-			while(instances.hasMoreElements()){
-				Instance instance = (Instance) instances.nextElement();
-				distribution[(int) instance.classValue()]++;
-			}
-			
-			tree.setClassValue(maxIndex(distribution));
+			tree.setClassValue(stats.majorityClass());
 			tree.setClassAttribute(data.classAttribute());
 		}else{ //not at leaf yet, generate child
-			selectedAttr.add(highestIGAtt);
-			Instances[] splittedData = split(data, highestIGAtt);
+			//every branch gets its own copy, so sibling subtrees are independent
+			ArrayList<Attribute> childSelectedAttr = new ArrayList<Attribute>(selectedAttr);
+			childSelectedAttr.add(highestIGAtt);
+			int[] bounds = RowPartition.partition(data, rows, from, to, highestIGAtt.index());
+			NodeStatistics[] childStats = NodeStatistics.children(tables[highestIGAtt.index()], 0);
 			Tree[] children = new Tree[tree.getAttribute().numValues()];
 			
 			for(int i = 0; i < children.length; i++){
 				children[i] = new Tree();
-				tree.addChildren(children);
-				generateTree(splittedData[i], children[i], selectedAttr);
 			}
-		}
-	}
-	
-	/**
-	 * Check if all instances are classified into a single class
-	 * @param data training data
-	 * @return boolean
-	 */
-	private boolean isClassified(Instances data){
-		boolean classified = true;
-		Enumeration instances = data.enumerateInstances();
-		Instance comparator = (Instance) instances.nextElement();
-		
-		while(instances.hasMoreElements() && classified){
-			Instance temp = (Instance)	instances.nextElement();
+			tree.addChildren(children);
 			
-			if(comparator.classValue() != temp.classValue()){
-				classified = false;
+			if(pool != null && subtreeCutoff > 0 && numInstances > subtreeCutoff){
+				ArrayList<SubtreeTask> tasks = new ArrayList<SubtreeTask>();
+				for(int i = 0; i < children.length; i++){
+					tasks.add(new SubtreeTask(data, rows, bounds[i], bounds[i + 1], childStats[i], children[i], childSelectedAttr));
+				}
+				if(ForkJoinTask.inForkJoinPool())
+					ForkJoinTask.invokeAll(tasks);
+				else
+					pool.invoke(new SubtreeTask(tasks));
+			}else{
+				for(int i = 0; i < children.length; i++){
+					generateTree(data, rows, bounds[i], bounds[i + 1], childStats[i], children[i], childSelectedAttr);
+				}
 			}
-			
-			comparator = temp;
 		}
-		
-		return classified;
 	}
 	
 	/**
-	 * Split instances 
-	 * @param data
-	 * @param att
-	 * @return
+	 * Fork/join task building one child subtree, or forking a group of them
 	 */
-	private Instances[] split(Instances data, Attribute att)
+	private class SubtreeTask extends RecursiveAction
 	{
-		Instances[] splittedData = new Instances[att.numValues()];
+		private static final long serialVersionUID = 1L;
+		private ColumnarDataset data;
+		private int[] rows;
+		private int from;
+		private int to;
+		private NodeStatistics stats;
+		private Tree tree;
+		private ArrayList<Attribute> selectedAttr;
+		private ArrayList<SubtreeTask> group;
 		
-		for(int i = 0; i < splittedData.length; i++){
-			splittedData[i] = new Instances(data, data.numInstances());
-			splittedData[i].delete();
+		SubtreeTask(ColumnarDataset data, int[] rows, int from, int to, NodeStatistics stats, Tree tree, ArrayList<Attribute> selectedAttr)
+		{
+			this.data = data;
+			this.rows = rows;
+			this.from = from;
+			this.to = to;
+			this.stats = stats;
+			this.tree = tree;
+			this.selectedAttr = selectedAttr;
 		}
 		
-		for(int i = 0; i < data.numInstances(); i++){			
-			splittedData[(int) data.instance(i).value(att)].add(data.instance(i));
+		SubtreeTask(ArrayList<SubtreeTask> group)
+		{
+			this.group = group;
 		}
 		
-		return splittedData;
+		@Override
+		protected void compute()
+		{
+			if(group != null)
+				invokeAll(group);
+			else
+				generateTree(data, rows, from, to, stats, tree, selectedAttr);
+		}
 	}
 	
 	/**
@@ -206,63 +523,84 @@ public class CustomId3 extends Classifier
 	}
 	
 	/**
-	 * Calculate information gain
+	 * Count attribute value x class of every candidate attribute, one pass over each attribute column
 	 * @param data training data
-	 * @param att attribute
-	 * @return information gain
+	 * @param rows row indexes into data
+	 * @param from first index of the node rows
+	 * @param to last index of the node rows, exclusive
+	 * @param selectedAttr already selected attribute at parents node
+	 * @return contingency table per attribute index, null for class and selected attributes
 	 */
-	private double informationGain(Instances data, Attribute att){
-		double informationGain = entropy(data);
-		int numOfLabels = att.numValues();
-
-		Instances[] instancesDistribution = new Instances[numOfLabels];
-		
-		for(int i = 0; i < instancesDistribution.length; i++)
-		{
-			instancesDistribution[i] = new Instances(data, data.numInstances());
-			instancesDistribution[i].delete();
-		}
+	private ContingencyTable[] contingencyTables(ColumnarDataset data, int[] rows, int from, int to, ArrayList<Attribute> selectedAttr)
+	{
+		ContingencyTable[] tables = new ContingencyTable[data.numAttributes()];
+		int numCandidates = 0;
+		int[] candidates = new int[data.numAttributes()];
 		
-		for(int i = 0; i < data.numInstances(); i++)
-		{			
-			instancesDistribution[(int) data.instance(i).value(att)].add(data.instance(i));
+		Enumeration attributes = data.header().enumerateAttributes();
+		while(attributes.hasMoreElements()){
+			Attribute attribute = (Attribute) attributes.nextElement();
+			if (!selectedAttr.contains(attribute)) {
+				tables[attribute.index()] = new ContingencyTable(attribute.numValues(), data.numClasses());
+				candidates[numCandidates++] = attribute.index();
+			}
 		}
 		
-		for(int i = 0; i < numOfLabels; i++)
-		{
-			double numInstancesOfLabel = (double) instancesDistribution[i].numInstances();
-			informationGain -=  numInstancesOfLabel / (double) data.numInstances() * entropy(instancesDistribution[i]);
+		if (pool != null && to - from > parallelThreshold) {
+			AttributeCountTask task = new AttributeCountTask(data, rows, from, to, tables, candidates, 0, numCandidates);
+			if(ForkJoinTask.inForkJoinPool())
+				task.invoke(); //already on a worker thread
+			else
+				pool.invoke(task);
+		} else {
+			for(int i = 0; i < numCandidates; i++){
+				data.count(tables[candidates[i]], candidates[i], rows, from, to);
+			}
 		}
 		
-		return informationGain;
+		return tables;
 	}
 	
 	/**
-	 * Entropy calculation
-	 * @param data training data
-	 * @return entropy of data
+	 * @return attributes of the training data, class index set
 	 */
-	private double entropy(Instances data)
+	public Instances trainingHeader()
 	{
-		double entropy = 0.0;
-		int numOfClasses = data.classAttribute().numValues();
-		int[] numOfInstancesPerClass = new int[numOfClasses];
-		
-		for(int i = 0; i < data.numInstances(); i++)
-		{
-			numOfInstancesPerClass[(int) data.instance(i).classValue()]++;
-		}
-		
-		for(int i = 0; i < numOfClasses; i++)
-		{
-			if(numOfInstancesPerClass[i] != 0)
-			{
-				double temp = (double) numOfInstancesPerClass[i] / (double) data.numInstances();
-				entropy -= temp * DoubleMath.log2(temp);
-			}
-		}
-		
-		return entropy;
+		checkBuilt();
+		return new Instances(trainingHeader, 0);
+	}
+	
+	/**
+	 * @return class attribute index of the training data
+	 */
+	public int classIndex()
+	{
+		checkBuilt();
+		return trainingHeader.classIndex();
+	}
+	
+	/**
+	 * Write the model for ModelFile: training schema and node table
+	 * @param out output
+	 * @throws IOException
+	 */
+	public void writeModel(DataOutputStream out) throws IOException
+	{
+		checkBuilt();
+		ModelFile.writeHeader(out, trainingHeader);
+		ModelFile.writeTree(out, decisionTree);
+	}
+	
+	/**
+	 * Read a model written by writeModel
+	 * @param in input
+	 * @throws IOException
+	 */
+	public void readModel(DataInputStream in) throws IOException
+	{
+		trainingHeader = ModelFile.readHeader(in);
+		decisionTree = ModelFile.readTree(in, trainingHeader);
+		compiledTree = CompiledTree.compile(decisionTree);
 	}
 	
 	/**
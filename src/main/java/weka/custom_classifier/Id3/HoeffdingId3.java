@@ -0,0 +1,358 @@
+package weka.custom_classifier.Id3;
+
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.IdentityHashMap;
+
+import com.google.common.math.DoubleMath;
+
+import weka.classifiers.Classifier;
+import weka.classifiers.UpdateableClassifier;
+import weka.core.Attribute;
+import weka.core.Capabilities;
+import weka.core.Capabilities.Capability;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.custom_classifier.ContingencyTable;
+import weka.custom_classifier.Tree;
+
+/**
+ * Incremental ID3 (Hoeffding tree / VFDT)
+ * Every leaf keeps the attribute value x class counts of the instances reaching it,
+ * and is split on the attribute with the highest information gain once the Hoeffding bound
+ * says the best attribute would stay the best with infinitely many instances
+ */
+public class HoeffdingId3 extends Classifier implements UpdateableClassifier
+{
+	/** For serialization */
+	private static final long serialVersionUID = 1L;
+	private Tree decisionTree;
+	private Instances header;
+	private IdentityHashMap<Tree, LeafStatistics> leaves; //statistics of every leaf
+	private int gracePeriod; //number of instances a leaf sees between split attempts
+	private double splitConfidence; //delta, probability of choosing the wrong attribute
+	private double tieThreshold; //split anyway when the bound is smaller than this
+
+	/**
+	 * Default Constructor
+	 */
+	public HoeffdingId3()
+	{
+		decisionTree = new Tree();
+		leaves = new IdentityHashMap<Tree, LeafStatistics>();
+		gracePeriod = 200;
+		splitConfidence = 1e-7;
+		tieThreshold = 0.05;
+	}
+
+	/**
+	 * @param gracePeriod number of instances a leaf sees between split attempts, default 200
+	 * @param splitConfidence probability of choosing the wrong attribute, default 1e-7
+	 * @param tieThreshold split on the best attribute when the bound is smaller than this, default 0.05
+	 */
+	public void setOption(int gracePeriod, double splitConfidence, double tieThreshold)
+	{
+		this.gracePeriod = gracePeriod;
+		this.splitConfidence = splitConfidence;
+		this.tieThreshold = tieThreshold;
+	}
+
+	/**
+	 * @return capabilities
+	 */
+	private Capabilities classifierCapabilities()
+	{
+		Capabilities capabilities = super.getCapabilities();
+
+		// set capabilities
+		capabilities.enable(Capability.NOMINAL_ATTRIBUTES);
+		capabilities.enable(Capability.NOMINAL_CLASS);
+		capabilities.enable(Capability.MISSING_VALUES);
+		capabilities.enable(Capability.MISSING_CLASS_VALUES);
+		capabilities.setMinimumNumberInstances(0);
+
+		return capabilities;
+	}
+
+	/**
+	 * Statistics of the instances reaching one leaf since it was created
+	 */
+	private static class LeafStatistics implements java.io.Serializable
+	{
+		private static final long serialVersionUID = 1L;
+		private ArrayList<Attribute> selectedAttr; //attributes used on the path to the leaf
+		private ContingencyTable[] tables; //null for class and selected attributes
+		private int[] classCounts;
+		private int numInstances;
+		private int numInstancesAtLastAttempt;
+
+		LeafStatistics(Instances header, ArrayList<Attribute> selectedAttr)
+		{
+			this.selectedAttr = selectedAttr;
+			tables = new ContingencyTable[header.numAttributes()];
+			classCounts = new int[header.numClasses()];
+
+			Enumeration attributes = header.enumerateAttributes();
+			while(attributes.hasMoreElements()){
+				Attribute attribute = (Attribute) attributes.nextElement();
+				if (!selectedAttr.contains(attribute)) {
+					tables[attribute.index()] = new ContingencyTable(attribute.numValues(), header.numClasses());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Build Hoeffding tree, the instances are learnt one by one as updateClassifier does
+	 * @param data training data, may be empty to only set the structure
+	 */
+	@Override
+	public void buildClassifier(Instances data) throws Exception
+	{
+		classifierCapabilities().testWithFail(data);
+
+		header = new Instances(data, 0);
+		decisionTree = new Tree();
+		decisionTree.setClassValue(Instance.missingValue());
+		decisionTree.setClassAttribute(header.classAttribute());
+		leaves = new IdentityHashMap<Tree, LeafStatistics>();
+		leaves.put(decisionTree, new LeafStatistics(header, new ArrayList<Attribute>()));
+
+		for(int i = 0; i < data.numInstances(); i++){
+			updateClassifier(data.instance(i));
+		}
+	}
+
+	/**
+	 * Learn one instance, in time independent of the number of instances seen
+	 * @param instance labeled instance
+	 */
+	public void updateClassifier(Instance instance) throws Exception
+	{
+		if(header == null){
+			throw new IllegalStateException("HoeffdingId3: No model built yet.");
+		}
+		if(instance.classIsMissing()){
+			return;
+		}
+
+		Tree leaf = leaf(instance);
+		LeafStatistics statistics = leaves.get(leaf);
+		int classValue = (int) instance.classValue();
+
+		statistics.classCounts[classValue]++;
+		statistics.numInstances++;
+		for(int i = 0; i < statistics.tables.length; i++){
+			if(statistics.tables[i] != null){
+				if(instance.isMissing(i)){
+					statistics.tables[i].addMissing(classValue);
+				}else{
+					statistics.tables[i].add((int) instance.value(i), classValue);
+				}
+			}
+		}
+		if(Instance.isMissingValue(leaf.getClassValue()) || statistics.classCounts[classValue] > statistics.classCounts[(int) leaf.getClassValue()]){
+			leaf.setClassValue(classValue);
+		}
+
+		if(statistics.numInstances - statistics.numInstancesAtLastAttempt >= gracePeriod){
+			statistics.numInstancesAtLastAttempt = statistics.numInstances;
+			attemptSplit(leaf, statistics);
+		}
+	}
+
+	/**
+	 * Split the leaf when the Hoeffding bound separates the best attribute from the second best
+	 * @param leaf leaf node
+	 * @param statistics statistics of the leaf
+	 */
+	private void attemptSplit(Tree leaf, LeafStatistics statistics)
+	{
+		int numClasses = 0;
+		for(int i = 0; i < statistics.classCounts.length; i++){
+			if(statistics.classCounts[i] > 0){
+				numClasses++;
+			}
+		}
+		if(numClasses < 2){ //pure leaf
+			return;
+		}
+
+		double entropy = ContingencyTable.entropy(statistics.classCounts, statistics.numInstances);
+		int best = -1;
+		double bestGain = 0.0;
+		double secondGain = 0.0;
+		for(int i = 0; i < statistics.tables.length; i++){
+			if(statistics.tables[i] != null){
+				double gain = statistics.tables[i].informationGain(entropy, statistics.numInstances);
+				if(best < 0 || gain > bestGain){
+					secondGain = best < 0 ? 0.0 : bestGain;
+					bestGain = gain;
+					best = i;
+				}else if(gain > secondGain){
+					secondGain = gain;
+				}
+			}
+		}
+
+		double bound = hoeffdingBound(DoubleMath.log2(header.numClasses()), statistics.numInstances);
+		if(best >= 0 && bestGain > 0.0 && (bestGain - secondGain > bound || bound < tieThreshold)){
+			split(leaf, statistics, header.attribute(best));
+		}
+	}
+
+	/**
+	 * @param range range of the information gain, log2 of number of classes
+	 * @param numInstances number of instances seen by the leaf
+	 * @return difference of mean the true mean stays within, with probability 1 - splitConfidence
+	 */
+	private double hoeffdingBound(double range, int numInstances)
+	{
+		return Math.sqrt(range * range * Math.log(1.0 / splitConfidence) / (2.0 * numInstances));
+	}
+
+	/**
+	 * Turn the leaf into a node, every child starts as a leaf with the majority class of its value
+	 * @param leaf leaf node
+	 * @param statistics statistics of the leaf, dropped
+	 * @param attribute split attribute
+	 */
+	private void split(Tree leaf, LeafStatistics statistics, Attribute attribute)
+	{
+		ArrayList<Attribute> childSelectedAttr = new ArrayList<Attribute>(statistics.selectedAttr);
+		childSelectedAttr.add(attribute);
+		ContingencyTable table = statistics.tables[attribute.index()];
+		Tree[] children = new Tree[attribute.numValues()];
+
+		for(int i = 0; i < children.length; i++){
+			children[i] = new Tree();
+			children[i].setClassAttribute(header.classAttribute());
+			if(table.getValueTotal(i) > 0){
+				children[i].setClassValue(maxIndex(table.getValueCounts(i)));
+			}else{
+				children[i].setClassValue(leaf.getClassValue());
+			}
+			leaves.put(children[i], new LeafStatistics(header, childSelectedAttr));
+		}
+
+		leaves.remove(leaf);
+		leaf.addChildren(children);
+		leaf.setAttribute(attribute);
+	}
+
+	/**
+	 * @param instance instance
+	 * @return leaf reached by the instance, missing value follows the first branch
+	 */
+	private Tree leaf(Instance instance)
+	{
+		Tree tree = decisionTree;
+		while(tree.getAttribute() != null){
+			tree = tree.getChild(instance.isMissing(tree.getAttribute()) ? 0 : (int) instance.value(tree.getAttribute()));
+		}
+		return tree;
+	}
+
+	/**
+	 * Classify instance
+	 * @return class value, missing value if no instance was learnt
+	 */
+	public double classifyInstance(Instance instance)
+	{
+		if(header == null){
+			throw new IllegalStateException("HoeffdingId3: No model built yet.");
+		}
+		return leaf(instance).getClassValue();
+	}
+
+	/**
+	 * @return number of leaves of the tree
+	 */
+	public int numLeaves()
+	{
+		return leaves.size();
+	}
+
+	/**
+	 * @param array
+	 * @return array's index which hold highest value
+	 */
+	private int maxIndex(int[] array){
+		int maxIndex = 0;
+
+		for (int i = 1; i < array.length; i++){
+			if (array[i] > array[maxIndex]){
+				maxIndex = i;
+			}
+		}
+
+		return maxIndex;
+	}
+
+	/**
+	 * Convert tree to string
+	 * @param level
+	 * @param tree
+	 * @return string
+	 */
+	private String toString(int level, Tree tree) {
+	    StringBuffer text = new StringBuffer();
+
+	    if (tree.getAttribute() == null)
+	    {
+	      if (Instance.isMissingValue(tree.getClassValue()))
+	      {
+	        text.append(": null");
+	      }
+	      else
+	      {
+	        text.append(": " + tree.getClassAttribute().value((int) tree.getClassValue()));
+	      }
+	    }
+	    else
+	    {
+	      for (int j = 0; j < tree.getAttribute().numValues(); j++)
+	      {
+	        text.append("\n");
+	        for (int i = 0; i < level; i++)
+	        {
+	          text.append("|  ");
+	        }
+	        text.append(tree.getAttribute().name() + " = " + tree.getAttribute().value(j));
+	        text.append(toString(level + 1, tree.getChild(j)));
+	      }
+	    }
+	    return text.toString();
+	}
+
+	/**
+	 * @return Hoeffding tree to string
+	 */
+	public String toString() {
+	    if (header == null)
+	    {
+	      return "HoeffdingId3: No model built yet.";
+	    }
+	    return "HoeffdingId3\n\n" + toString(0, decisionTree);
+	}
+
+	/**
+	 * For testing purpose only
+	 * @param args
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception{
+		String dataset = "example/supermarket.arff";
+		Instances data = CustomId3.loadDatasetArff(dataset);
+		data.setClass(data.attribute(data.numAttributes() - 1));
+
+		HoeffdingId3 tree = new HoeffdingId3();
+		tree.buildClassifier(new Instances(data, 0));
+		for(int i = 0; i < data.numInstances(); i++){
+			tree.updateClassifier(data.instance(i));
+		}
+
+		System.out.println("Hoeffding ID3, " + tree.numLeaves() + " leaves");
+		System.out.println(tree);
+	}
+}
@@ -0,0 +1,234 @@
+package weka.custom_classifier.J48;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import weka.classifiers.Classifier;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+import weka.custom_classifier.ColumnarDataset;
+
+/**
+ * Random forest of CustomJ48 trees
+ * The numeric attributes are split once, every tree grows on a bootstrap of that one read only dataset:
+ * a vector of row indexes drawn with replacement, not a copy of the instances.
+ * Trees are unpruned and score a random subset of the candidate attributes at every node,
+ * they are built concurrently, each from its own seed, so the forest does not depend on the scheduling
+ */
+public class CustomForest extends Classifier
+{
+	/** For serialization */
+	private static final long serialVersionUID = 1L;
+
+	private CustomJ48[] trees;
+	private Instances trainingHeader;
+	private int numTrees; //default 10
+	private int numRandomAttributes; //0 for log2(number of attributes) + 1
+	private int numericSplittingOption; //as CustomJ48, default 1
+	private int numberOfMultiSplit; //as CustomJ48, default 10
+	private int numThreads;
+	private long seed;
+
+	/**
+	 * Default Constructor
+	 */
+	public CustomForest()
+	{
+		numTrees = 10;
+		numRandomAttributes = 0;
+		numericSplittingOption = 1;
+		numberOfMultiSplit = 10;
+		numThreads = Runtime.getRuntime().availableProcessors();
+		seed = 1;
+	}
+
+	/**
+	 * @param numTrees number of trees
+	 * @param numRandomAttributes number of candidate attributes drawn at every node, 0 for log2(number of attributes) + 1
+	 * @param seed seed of the bootstraps and of the attribute draws
+	 */
+	public void setForestOption(int numTrees, int numRandomAttributes, long seed)
+	{
+		if(numTrees < 1){
+			throw new IllegalArgumentException("Number of trees must be at least 1");
+		}
+		if(numRandomAttributes < 0){
+			throw new IllegalArgumentException("Number of random attributes must not be negative");
+		}
+		this.numTrees = numTrees;
+		this.numRandomAttributes = numRandomAttributes;
+		this.seed = seed;
+	}
+
+	/**
+	 * @param numericSplittingOption 1 for binary split, 0 for multisplit, 2 for exact threshold at every node, 3 for histogram threshold
+	 * @param numberOfMultiSplit the number of threshold classes for multisplit, minimum 3
+	 */
+	public void setOption(int numericSplittingOption, int numberOfMultiSplit)
+	{
+		new CustomJ48().setOption(numericSplittingOption, numberOfMultiSplit); //validate
+		this.numericSplittingOption = numericSplittingOption;
+		this.numberOfMultiSplit = numberOfMultiSplit;
+	}
+
+	/**
+	 * @param numThreads number of trees built concurrently
+	 */
+	public void setParallelOption(int numThreads)
+	{
+		this.numThreads = numThreads;
+	}
+
+	/**
+	 * Build the forest
+	 * @param data training data, instances with missing class are deleted
+	 */
+	@Override
+	public void buildClassifier(Instances data) throws Exception
+	{
+		CustomJ48 splitter = newTree();
+		final CustomJ48.Discretized discretized = splitter.discretize(data);
+		trainingHeader = new Instances(data, 0);
+		int numAttributes = trainingHeader.numAttributes() - 1;
+		int numRandom = numRandomAttributes > 0 ? numRandomAttributes : (int) Utils.log2(Math.max(1, numAttributes)) + 1;
+
+		//seeds drawn up front, tree i gets the same seeds whatever thread builds it
+		Random random = new Random(seed);
+		ArrayList<Callable<CustomJ48>> tasks = new ArrayList<Callable<CustomJ48>>();
+		for(int i = 0; i < numTrees; i++){
+			final long bootstrapSeed = random.nextLong();
+			final CustomJ48 tree = newTree();
+			tree.setForestMemberOption(numRandom, random.nextLong());
+			tasks.add(new Callable<CustomJ48>() {
+				public CustomJ48 call() throws Exception {
+					tree.buildClassifier(discretized, bootstrap(discretized.numInstances(), new Random(bootstrapSeed)));
+					return tree;
+				}
+			});
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(numThreads, numTrees)));
+		try {
+			List<Future<CustomJ48>> results = pool.invokeAll(tasks);
+			CustomJ48[] built = new CustomJ48[numTrees];
+			for(int i = 0; i < numTrees; i++){
+				built[i] = results.get(i).get(); //rethrow the failure of a tree
+			}
+			trees = built;
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private CustomJ48 newTree()
+	{
+		CustomJ48 tree = new CustomJ48();
+		tree.setOption(numericSplittingOption, numberOfMultiSplit);
+		return tree;
+	}
+
+	/**
+	 * @param numRows number of training rows
+	 * @param random random generator of the tree
+	 * @return numRows row indexes drawn with replacement
+	 */
+	private static int[] bootstrap(int numRows, Random random)
+	{
+		int[] rows = new int[numRows];
+		for(int i = 0; i < numRows; i++){
+			rows[i] = random.nextInt(numRows);
+		}
+		return rows;
+	}
+
+	/**
+	 * @param instance instance in the attribute space of the training data
+	 * @return fraction of the trees voting for every class
+	 */
+	@Override
+	public double[] distributionForInstance(Instance instance) throws Exception
+	{
+		checkBuilt();
+		double[] votes = new double[trainingHeader.numClasses()];
+		for(int i = 0; i < trees.length; i++){
+			double classValue = trees[i].classifyInstance(instance);
+			if(!Instance.isMissingValue(classValue)){
+				votes[(int) classValue]++;
+			}
+		}
+		if(Utils.sum(votes) > 0){
+			Utils.normalize(votes);
+		}
+		return votes;
+	}
+
+	/**
+	 * Classify a columnar block of rows, one tree at a time over the whole block
+	 * @param block rows in the attribute space of the training data
+	 * @param predictions filled with the class value index with most votes of each row, first one on tie
+	 */
+	public void classifyInstances(ColumnarDataset block, int[] predictions)
+	{
+		checkBuilt();
+		int numRows = block.numRows();
+		int numClasses = trainingHeader.numClasses();
+		int[] votes = new int[numRows * numClasses];
+		int[] treePredictions = new int[numRows];
+		for(int i = 0; i < trees.length; i++){
+			trees[i].classifyInstances(block, treePredictions);
+			for(int row = 0; row < numRows; row++){
+				if(treePredictions[row] >= 0){
+					votes[row * numClasses + treePredictions[row]]++;
+				}
+			}
+		}
+		for(int row = 0; row < numRows; row++){
+			int best = 0;
+			for(int c = 1; c < numClasses; c++){
+				if(votes[row * numClasses + c] > votes[row * numClasses + best]){
+					best = c;
+				}
+			}
+			predictions[row] = best;
+		}
+	}
+
+	private void checkBuilt()
+	{
+		if(trees == null){
+			throw new IllegalStateException("Forest: No model built yet.");
+		}
+	}
+
+	/**
+	 * @return number of trees
+	 */
+	public int numTrees()
+	{
+		return trees == null ? 0 : trees.length;
+	}
+
+	/**
+	 * @param index tree index
+	 * @return tree of the forest
+	 */
+	public CustomJ48 getTree(int index)
+	{
+		checkBuilt();
+		return trees[index];
+	}
+
+	public String toString()
+	{
+		if(trees == null){
+			return "Custom forest: No model built yet.";
+		}
+		return "Custom forest of " + trees.length + " unpruned J48 trees";
+	}
+}
@@ -1,9 +1,19 @@
 package weka.custom_classifier.J48;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Enumeration;
+import java.util.IdentityHashMap;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import com.google.common.math.DoubleMath;
 import java.util.Scanner;
@@ -14,16 +24,26 @@ import weka.classifiers.trees.J48;
 import weka.core.Attribute;
 import weka.core.Capabilities;
 import weka.core.Capabilities.Capability;
+import weka.core.FastVector;
 import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.converters.ArffLoader;
+import weka.custom_classifier.AttributeCountTask;
+import weka.custom_classifier.BinnedColumns;
+import weka.custom_classifier.BuildMetrics;
+import weka.custom_classifier.ColumnarDataset;
+import weka.custom_classifier.CompiledTree;
+import weka.custom_classifier.ContingencyTable;
+import weka.custom_classifier.ModelFile;
+import weka.custom_classifier.NodeStatistics;
+import weka.custom_classifier.PresortedColumns;
+import weka.custom_classifier.RowPartition;
 import weka.custom_classifier.Tree;
-import weka.filters.Filter;
-import weka.filters.unsupervised.attribute.Add;
 
 /**
  * Custom J48
- * Using binary split for numeric attributes handling
+ * Using binary split for numeric attributes handling,
+ * or exact threshold search at every node over numeric attributes sorted once (option 2)
  * Using subtree raising for pruning algorithm, no confidence factor needed.
  * ^it is based on the idea of rule-based pruning model, trying to remove conjuction
  *
@@ -32,13 +52,25 @@ public class CustomJ48 extends Classifier
 {
 	/** For serialization */
 	private static final long serialVersionUID = 1L;
+	private static final Logger LOGGER = Logger.getLogger(CustomJ48.class.getName());
+	private static final BuildMetrics METRICS = BuildMetrics.get();
 	
 	private Tree decisionTree;
+	private CompiledTree compiledTree; //flattened decisionTree used for inference, classifies data in the original attribute space
+	private Instances trainingHeader; //original attribute space, before numeric attributes are split
 	private ArrayList<Integer> infoBinarySplit; //variable that holds threshold for numeric attributes in binary splitting for numeric attribute
         private ArrayList< ArrayList<Double> > infoMultiSplit; //variable that holds threshold for numeric attributes in multi splitting for numeric attribute
-	private ArrayList <ArrayList<Integer>> largestAttributeDistribution;
-        private int binaryNumericSplittingOption; //default use binary splitting
+        private int binaryNumericSplittingOption; //default use binary splitting, 2 for exact threshold at every node, 3 for histogram threshold
         private int numberOfMultiSplit; //default 10
+        private int parallelThreshold; //nodes with more rows score attributes concurrently, 0 for sequential
+        private int subtreeCutoff; //nodes with more rows build their children concurrently, 0 for sequential
+        private int numThreads;
+        private transient ForkJoinPool pool;
+        private transient PresortedColumns presorted; //sorted numeric attributes while building with exact threshold
+        private transient BinnedColumns binned; //binned numeric attributes while building with histogram threshold
+        private int numRandomAttributes; //candidate attributes drawn at every node for a forest member, 0 for all
+        private long seed;
+        private transient Random random;
 	
 	/**
 	 * Default Constructor
@@ -48,9 +80,11 @@ public class CustomJ48 extends Classifier
         decisionTree = new Tree();
         infoBinarySplit = new ArrayList();
         infoMultiSplit = new ArrayList();
-        largestAttributeDistribution = new ArrayList();
         binaryNumericSplittingOption = 1;
         numberOfMultiSplit = 10;
+        parallelThreshold = 0;
+        subtreeCutoff = 0;
+        numThreads = Runtime.getRuntime().availableProcessors();
 	}
 	
 	/**
@@ -75,14 +109,89 @@ public class CustomJ48 extends Classifier
         
     /**
      * 
-     * @param binarySplittingForNumeric 1 if true (use binary split), 0 to use multisplit
-     * @param numerOfMultiSplit the number of threshold classes for multisplit, default 10, minimum 3
+     * @param binarySplittingForNumeric 1 if true (use binary split), 0 to use multisplit, 2 to search the exact threshold at every node,
+     * 3 to search the threshold over at most 255 quantile bins at every node
+     * @param numberOfMultiSplit the number of threshold classes for multisplit, default 10, minimum 3
      */
-    private void setOption(int binarySplittingForNumeric, int numberOfMultiSplit)
+    public void setOption(int binarySplittingForNumeric, int numberOfMultiSplit)
     {
+        if (binarySplittingForNumeric < 0 || binarySplittingForNumeric > 3)
+            throw new IllegalArgumentException("Numeric splitting option must be 0, 1, 2 or 3");
+        if (binarySplittingForNumeric==0 && numberOfMultiSplit < 3)
+            throw new IllegalArgumentException("Number of multisplit must be at least 3");
         binaryNumericSplittingOption = binarySplittingForNumeric;
         this.numberOfMultiSplit = numberOfMultiSplit;
     }
+    
+    /**
+     * @return 1 for binary split, 0 for multisplit, 2 for exact threshold at every node, 3 for histogram threshold at every node
+     */
+    public int getNumericSplittingOption()
+    {
+        return binaryNumericSplittingOption;
+    }
+    
+    /**
+     * @return the number of threshold classes for multisplit
+     */
+    public int getNumberOfMultiSplit()
+    {
+        return numberOfMultiSplit;
+    }
+    
+    /**
+     * Training data with numeric attributes split, as buildClassifier prepares it
+     * Read only while building, so CustomJ48s with the same split options can build from one instance concurrently
+     */
+    public static class Discretized
+    {
+        private Instances trainingHeader;
+        private int binaryNumericSplittingOption;
+        private int numberOfMultiSplit;
+        private ArrayList<Integer> infoBinarySplit;
+        private ArrayList< ArrayList<Double> > infoMultiSplit;
+        private ColumnarDataset columns; //numeric attributes split, except for exact and histogram threshold
+        private BinnedColumns binned; //histogram threshold only
+        
+        /**
+         * @return number of training instances, without instances with missing class
+         */
+        public int numInstances()
+        {
+            return columns.numRows();
+        }
+    }
+    
+    /**
+     * 
+     * @param parallelThreshold nodes with more rows than this score their candidate attributes concurrently, 0 to always score sequentially
+     * @param numThreads number of threads used for concurrent scoring
+     */
+    public void setParallelOption(int parallelThreshold, int numThreads)
+    {
+        this.parallelThreshold = parallelThreshold;
+        this.numThreads = numThreads;
+    }
+    
+    /**
+     * 
+     * @param subtreeCutoff nodes with more rows than this build their child subtrees concurrently, 0 to always build sequentially
+     */
+    public void setSubtreeParallelOption(int subtreeCutoff)
+    {
+        this.subtreeCutoff = subtreeCutoff;
+    }
+    
+    /**
+     * Grow the tree as a member of a forest: not pruned, every node scores a random subset of its candidate attributes
+     * @param numRandomAttributes number of candidate attributes drawn at every node, 0 for a regular pruned tree
+     * @param seed seed of the draws
+     */
+    void setForestMemberOption(int numRandomAttributes, long seed)
+    {
+        this.numRandomAttributes = numRandomAttributes;
+        this.seed = seed;
+    }
 	
 	/**
 	 * Build J48 classifier
@@ -90,247 +199,361 @@ public class CustomJ48 extends Classifier
 	 */
 	public void buildClassifier(Instances data) throws Exception 
 	{
+        buildClassifier(discretize(data));
+	}
+	
+	/**
+	 * Build J48 classifier straight from columns, as ColumnarFile.read maps them, no instance is created
+	 * @param data training data in columns, class index set, not modified
+	 */
+	public void buildClassifier(ColumnarDataset data) throws Exception 
+	{
+        buildClassifier(discretize(data));
+	}
+	
+	/**
+	 * Split the numeric attributes of training data with the split options of this classifier
+	 * @param data training data, instances with missing class are deleted
+	 * @return training data for buildClassifier
+	 * @throws Exception 
+	 */
+	public Discretized discretize(Instances data) throws Exception
+	{
         classifierCapabilities().testWithFail(data);
 
+        BuildMetrics.PhaseTimer timer = METRICS.start(BuildMetrics.DISCRETIZE);
         data.deleteWithMissingClass(); //deal with missing class
+        Discretized retVal = split(new ColumnarDataset(data));
+        timer.stop();
+        return retVal;
+	}
+	
+	/**
+	 * Split the numeric attributes of training data in columns with the split options of this classifier
+	 * @param data training data in columns, class index set, not modified, rows with missing class are left out
+	 * @return training data for buildClassifier
+	 * @throws Exception 
+	 */
+	public Discretized discretize(ColumnarDataset data) throws Exception
+	{
+        classifierCapabilities().testWithFail(data.header());
 
+        BuildMetrics.PhaseTimer timer = METRICS.start(BuildMetrics.DISCRETIZE);
+        Discretized retVal = split(data.withoutMissingClass());
+        timer.stop();
+        return retVal;
+	}
+	
+	/**
+	 * @param data training data in columns, no missing class
+	 * @return training data for buildClassifier
+	 */
+	private Discretized split(ColumnarDataset data)
+	{
+        Discretized retVal = new Discretized();
+        retVal.trainingHeader = new Instances(data.header(), 0);
+        retVal.binaryNumericSplittingOption = binaryNumericSplittingOption;
+        retVal.numberOfMultiSplit = numberOfMultiSplit;
+        infoBinarySplit = new ArrayList();
+        infoMultiSplit = new ArrayList();
         if (binaryNumericSplittingOption==1)
-            data = new Instances(binarySplitNumericAttribute(data)); //handle numeric attributes using binary split
-        else //multisplit
-            data = new Instances(multiSplitNumericAttribute(data));
+            data = binarySplitNumericAttribute(data); //handle numeric attributes using binary split
+        else if (binaryNumericSplittingOption==0) //multisplit
+            data = multiSplitNumericAttribute(data);
+        retVal.infoBinarySplit = infoBinarySplit;
+        retVal.infoMultiSplit = infoMultiSplit;
+        retVal.columns = data;
+        if (binaryNumericSplittingOption==3) //numeric attributes kept, binned once
+            retVal.binned = new BinnedColumns(retVal.columns);
+        return retVal;
+	}
+	
+	/**
+	 * Build J48 classifier from training data already split
+	 * @param discretized training data split with the same numeric splitting options as this classifier
+	 */
+	public void buildClassifier(Discretized discretized) throws Exception 
+	{
+        buildClassifier(discretized, RowPartition.identity(discretized.numInstances()));
+	}
+	
+	/**
+	 * Build J48 classifier from some rows of training data already split
+	 * @param discretized training data split with the same numeric splitting options as this classifier, not modified
+	 * @param rows row indexes into the training data, a row may appear several times, reordered
+	 */
+	void buildClassifier(Discretized discretized, int[] rows) throws Exception 
+	{
+        if (discretized.binaryNumericSplittingOption != binaryNumericSplittingOption
+                || (binaryNumericSplittingOption==0 && discretized.numberOfMultiSplit != numberOfMultiSplit))
+            throw new IllegalArgumentException("J48: Data split with other numeric splitting options.");
+        
+        ColumnarDataset columns = discretized.columns;
+        trainingHeader = discretized.trainingHeader;
+        infoBinarySplit = discretized.infoBinarySplit;
+        infoMultiSplit = discretized.infoMultiSplit;
+        decisionTree = new Tree();
           
         ArrayList<Attribute> selectedAttr = new ArrayList();
-        generateTree(data, data, decisionTree, selectedAttr);
+        random = numRandomAttributes > 0 ? new Random(seed) : null;
+        if (binaryNumericSplittingOption==2) //numeric attributes kept, sorted once
+            presorted = new PresortedColumns(columns, rows);
+        binned = discretized.binned;
+        METRICS.recordBuild();
+        BuildMetrics.PhaseTimer timer = METRICS.start(BuildMetrics.GROW);
+        if (parallelThreshold > 0 || subtreeCutoff > 0)
+            pool = new ForkJoinPool(numThreads);
+        try {
+            NodeStatistics stats = NodeStatistics.count(columns, rows, 0, rows.length);
+            generateTree(columns, rows, 0, rows.length, stats.majorityClass(), stats, decisionTree, selectedAttr);
+        } finally {
+            if (pool != null)
+                pool.shutdown();
+            pool = null;
+            presorted = null;
+            binned = null;
+            random = null;
+        }
+        timer.stop();
+        METRICS.recordDepth(decisionTree);
 
-        //post-prune
-        pruneTree(null, null, decisionTree, data);
+        //post-prune, forest members stay unpruned
+        if (numRandomAttributes == 0) {
+            timer = METRICS.start(BuildMetrics.PRUNE);
+            pruneTree(null, null, decisionTree, columns);
+            timer.stop();
+        }
+        compiledTree = CompiledTree.compile(decisionTree, inputBinding(columns.header()));
 
-        //accuracy
-        System.out.println("Model accuracy = "+accuracyPerformance(data));
+        //accuracy on the training data, a full pass only computed when traced
+        if (LOGGER.isLoggable(Level.FINE)) {
+            timer = METRICS.start(BuildMetrics.EVALUATE);
+            double accuracy = accuracyPerformance(columns.toInstances());
+            timer.stop();
+            LOGGER.fine("Model accuracy = "+accuracy);
+        }
 	}
 		
 	/**
 	 * Split attributes that has numeric value using binary split
-	 * @param data training data
-	 * @return Instances (processed) : numeric -> nominal with binary splitting
-	 * @throws Exception
+	 * @param data training data in columns
+	 * @return columns (processed) : numeric -> nominal with binary splitting
 	 */
-	private Instances binarySplitNumericAttribute(Instances data) throws Exception
+	private ColumnarDataset binarySplitNumericAttribute(ColumnarDataset data)
 	{
-        Instances retVal = new Instances(data);
+        double[][] range = numericRange(data);
+        double[][] cutPoints = new double[data.numAttributes()][];
+        String[][] labels = new String[data.numAttributes()][];
 
-        int len = data.numAttributes();
-        int count0=0;
-        int count1=0;
-        for (int i=0; i<len; i++)
+        for (int i=0; i<data.numAttributes(); i++)
         {
             if (data.attribute(i).isNumeric()) 
             {
-                retVal.deleteAttributeAt(i);
-
-                double valMin = Double.MAX_VALUE;
-                double valMax = Double.MIN_VALUE;
-                for (int j=0; j<data.numInstances(); j++)
-                {
-                    if (data.instance(j).value(i) > valMax)
-                    {
-                        valMax = data.instance(j).value(i);
-                    }
-                    if (data.instance(j).value(i) < valMin)
-                    {
-                        valMin = data.instance(j).value(i);
-                    }
-                }
+                double valMin = range[0][i];
+                double valMax = range[1][i];
                 int middleValue = (int) Math.floor((valMax-valMin)/2 + valMin); //threshold calculation
                 infoBinarySplit.add(middleValue);
 
-                //modify training data to fit the rule
-                Add filter = new Add();
-                filter.setAttributeIndex("first");
-                filter.setNominalLabels("moreThan"+Integer.toString(middleValue)+", lessEqualThan"+Integer.toString(middleValue));
-                filter.setAttributeName(data.attribute(i).name());
-                filter.setInputFormat(retVal);
-                retVal = Filter.useFilter(retVal, filter);
-
-                for (int j=0; j<data.numInstances(); j++)
-                {
-                    if (!data.instance(j).isMissing(i))
-                    {		
-                        if (Double.compare(data.instance(j).value(i), middleValue) > 0) {
-                            retVal.instance(j).setValue(retVal.attribute(data.attribute(i).name()), 0);
-                            count0++;
-                        }
-                        else if (Double.compare(data.instance(j).value(i), middleValue) <= 0)  {
-                            retVal.instance(j).setValue(retVal.attribute(data.attribute(i).name()), 1);
-                            count1++;
-                        }
-                    }
-                    //missing value handling on another procedure
-                }
+                cutPoints[i] = new double[] {middleValue};
+                labels[i] = binarySplitLabels(middleValue);
             }
         }
-        return retVal;
+        return splitNumericAttributes(data, cutPoints, labels, true);
 	}
         
         /**
 	 * Split attributes that has numeric value using multi-threshold split
-	 * @param data training data
-	 * @return Instances (processed) : numeric -> nominal with binary splitting
-	 * @throws Exception
+	 * @param data training data in columns
+	 * @return columns (processed) : numeric -> nominal with multi splitting
 	 */
-	private Instances multiSplitNumericAttribute(Instances data) throws Exception
+	private ColumnarDataset multiSplitNumericAttribute(ColumnarDataset data)
 	{
-        Instances retVal = new Instances(data);
+        double[][] range = numericRange(data);
+        double[][] cutPoints = new double[data.numAttributes()][];
+        String[][] labels = new String[data.numAttributes()][];
 
-        int len = data.numAttributes();
-        int count0=0;
-        int count1=0;
-        for (int i=0; i<len; i++)
+        for (int i=0; i<data.numAttributes(); i++)
         {
             if (data.attribute(i).isNumeric()) 
             {
-                retVal.deleteAttributeAt(i);
-
-                double valMin = Double.MAX_VALUE;
-                double valMax = Double.MIN_VALUE;
-                for (int j=0; j<data.numInstances(); j++)
-                {
-                    if (data.instance(j).value(i) > valMax)
-                    {
-                        valMax = data.instance(j).value(i);
-                    }
-                    if (data.instance(j).value(i) < valMin)
-                    {
-                        valMin = data.instance(j).value(i);
-                    }
-                }
+                double valMin = range[0][i];
+                double valMax = range[1][i];
                 double thresholdGap = ((valMax-valMin)/(this.numberOfMultiSplit-2));
                 ArrayList<Double> infoAttrSplit = new ArrayList();
-                String nominalLabels = "";
                 for (int x=0; x<numberOfMultiSplit-1; x++)
                 {
                     infoAttrSplit.add((valMin)+(thresholdGap*x));
-                    if (x>0)
-                        nominalLabels += ", ";
-                    nominalLabels += "<="+Double.toString(infoAttrSplit.get(x));
                 }
-                nominalLabels += ", ";
-                nominalLabels += ">"+Double.toString(infoAttrSplit.get(infoAttrSplit.size()-1));
                 infoMultiSplit.add(infoAttrSplit);
 
-                //modify training data to fit the rule
-                Add filter = new Add();
-                filter.setAttributeIndex("first");
-                filter.setNominalLabels(nominalLabels);
-                filter.setAttributeName(data.attribute(i).name());
-                filter.setInputFormat(retVal);
-                retVal = Filter.useFilter(retVal, filter);
-
-                for (int j=0; j<data.numInstances(); j++)
-                {
-                    if (!data.instance(j).isMissing(i))
-                    {		
-                        boolean found = false;
-                        for (int x=0; x<infoAttrSplit.size() && !found; x++)
-                        {
-                            if (Double.compare(data.instance(j).value(i),infoAttrSplit.get(x)) <= 0)
-                            {
-                                retVal.instance(j).setValue(retVal.attribute(data.attribute(i).name()), x);
-                                found = true;
-                            }
-                        }
-                        if (!found) //more than last value
-                        {
-                            retVal.instance(j).setValue(retVal.attribute(data.attribute(i).name()), infoAttrSplit.size());
-                        }
-                    }
-                    //missing value handling on another procedure
-                }
+                cutPoints[i] = toArray(infoAttrSplit);
+                labels[i] = multiSplitLabels(infoAttrSplit);
             }
         }
-        return retVal;
+        return splitNumericAttributes(data, cutPoints, labels, false);
 	}
 	
 	/**
-	 * Generate most common attribute values distribution over class
-	 * @param data training data
+	 * Minimum and maximum of every numeric attribute, in one scan over each numeric column
+	 * Missing values are skipped
+	 * @param data columns
+	 * @return {minimum, maximum} per attribute index
 	 */
-	public void generateAttributesValueDistribution(Instances data)
+	private double[][] numericRange(ColumnarDataset data)
 	{
-        int numAttr = data.numAttributes();
-        int maxAttr = Integer.MIN_VALUE;
-        int simpan = 0;
-        for (int i=0; i<numAttr; i++)
-            if (data.attribute(i).numValues() > maxAttr) {
-                maxAttr = data.attribute(i).numValues();
-                simpan = i;
-            }
-        int[][][] counter = new int[data.numClasses()][data.numAttributes()][data.attribute(simpan).numValues()];
+        int len = data.numAttributes();
+        double[] valMin = new double[len];
+        double[] valMax = new double[len];
+        Arrays.fill(valMin, Double.MAX_VALUE);
+        Arrays.fill(valMax, Double.MIN_VALUE);
 
-        //Counting matrix of largest attribute value distribution over classes
-        for (int i=0; i<data.numInstances(); i++)
+        for (int i=0; i<len; i++)
         {
-            for (int j=0; j<data.numAttributes(); j++) {
-                if (!data.instance(i).isMissing(j)) {
-                    counter[(int) data.instance(i).classValue()][j][(int) data.instance(i).value(data.instance(i).attribute(j))]++;
-                }
+            double[] column = data.numericColumn(i);
+            if (column == null)
+                continue;
+            for (int j=0; j<data.numRows(); j++)
+            {
+                double value = column[j];
+                if (value > valMax[i])
+                    valMax[i] = value;
+                if (value < valMin[i])
+                    valMin[i] = value;
             }
         }
-
-        //Generating matrix of largest attribute value distribution over classes
-        for (int i=0; i<data.numClasses(); i++) {
-            ArrayList<Integer> maxAttributeIdx = new ArrayList<Integer>();
-            for (int j=0; j<data.numAttributes(); j++) {
-                int max = Integer.MIN_VALUE;
-                simpan = 0;
-                for (int k=0; k<maxAttr; k++)
-                    if (counter[i][j][k] > max) {
-                        max = (int) counter[i][j][k];
-                        simpan = k;
-                    }
-                maxAttributeIdx.add(simpan);
-            }
-            largestAttributeDistribution.add(maxAttributeIdx);
-        }		
+        return new double[][] {valMin, valMax};
+	}
+	
+	private String[] binarySplitLabels(int threshold)
+	{
+        return new String[] {"moreThan"+Integer.toString(threshold), "lessEqualThan"+Integer.toString(threshold)};
+	}
+	
+	private String[] multiSplitLabels(ArrayList<Double> thresholds)
+	{
+        String[] labels = new String[thresholds.size()+1];
+        for (int x=0; x<thresholds.size(); x++)
+            labels[x] = "<="+Double.toString(thresholds.get(x));
+        labels[thresholds.size()] = ">"+Double.toString(thresholds.get(thresholds.size()-1));
+        return labels;
+	}
+	
+	private double[] toArray(ArrayList<Double> list)
+	{
+        double[] array = new double[list.size()];
+        for (int x=0; x<array.length; x++)
+            array[x] = list.get(x);
+        return array;
 	}
 	
 	/**
-	 * Replace instances with missing value
-	 * @param data Instances
-	 * @return Instances with missing value replaced
+	 * Replace every numeric attribute with a nominal attribute of its bins, in one pass over the instances
+	 * @param data instances
+	 * @param cutPoints ascending cut points per attribute index, null for attribute kept as is
+	 * @param labels nominal labels per attribute index, one per bin
+	 * @param binary true to give the bins in reverse order (moreThan is the first value)
+	 * @return Instances (processed): numeric -> nominal
 	 */
-	public Instances replaceMissingAttribute(Instances data)
+	private Instances splitNumericAttributes(Instances data, double[][] cutPoints, String[][] labels, boolean binary)
 	{
-        Instances retVal = new Instances(data);
-        for (int i=0; i<data.numInstances(); i++) 
+        int len = data.numAttributes();
+        int[] position = new int[len];
+        Instances retVal = new Instances(splitHeader(data, cutPoints, labels, position), data.numInstances());
+
+        for (int j=0; j<data.numInstances(); j++)
         {
-            for (int j=0; j<data.instance(i).numAttributes(); j++) {
-                if (data.instance(i).isMissing(j))
-                {
-                    retVal.instance(i).setValue(j, largestAttributeDistribution.get(data.instance(i).classIndex()).get(j));
-                }
-            }
+            Instance instance = data.instance(j);
+            double[] values = new double[len];
+            for (int i=0; i<len; i++)
+                values[position[i]] = bin(cutPoints[i], instance.value(i), binary);
+            retVal.add(new Instance(instance.weight(), values));
         }
         return retVal;
 	}
 	
 	/**
-	 * Replace attribute of instance with missing value, using most common attribute
-	 * @param data Instances
-	 * @return Instances with missing value replaced
+	 * Replace every numeric attribute with a nominal attribute of its bins, in one pass over each column
+	 * @param data columns
+	 * @param cutPoints ascending cut points per attribute index, null for attribute kept as is
+	 * @param labels nominal labels per attribute index, one per bin
+	 * @param binary true to give the bins in reverse order (moreThan is the first value)
+	 * @return columns (processed): numeric -> nominal
+	 */
+	private ColumnarDataset splitNumericAttributes(ColumnarDataset data, double[][] cutPoints, String[][] labels, boolean binary)
+	{
+        int len = data.numAttributes();
+        int[] position = new int[len];
+        ColumnarDataset retVal = new ColumnarDataset(splitHeader(data.header(), cutPoints, labels, position), data.numRows());
+
+        for (int i=0; i<len; i++)
+            for (int j=0; j<data.numRows(); j++)
+                retVal.setValue(position[i], j, bin(cutPoints[i], data.value(i, j), binary));
+        return retVal;
+	}
+	
+	/**
+	 * Attributes after the numeric split
+	 * Split attributes come first, the last numeric attribute first, the other attributes keep their order
+	 * @param data dataset structure
+	 * @param cutPoints ascending cut points per attribute index, null for attribute kept as is
+	 * @param labels nominal labels per attribute index, one per bin
+	 * @param position filled with the new position of every attribute
+	 * @return dataset structure with the class index moved along
 	 */
-	public Instance replaceMissingAttribute(Instance data)
+	private Instances splitHeader(Instances data, double[][] cutPoints, String[][] labels, int[] position)
 	{
-        Instance retVal = new Instance(data);
-        for (int j=0; j<data.numAttributes(); j++) {
-            if (data.isMissing(j))
+        int len = data.numAttributes();
+        int numSplit = 0;
+        for (int i=0; i<len; i++)
+            if (cutPoints[i] != null)
+                numSplit++;
+
+        Attribute[] attributes = new Attribute[len];
+        int split = numSplit;
+        int kept = numSplit;
+        for (int i=0; i<len; i++)
+        {
+            if (cutPoints[i] != null)
             {
-                retVal.setValue(j, largestAttributeDistribution.get(data.classIndex()).get(j));
+                FastVector values = new FastVector(labels[i].length);
+                for (int x=0; x<labels[i].length; x++)
+                    values.addElement(labels[i][x]);
+                position[i] = --split;
+                attributes[position[i]] = new Attribute(data.attribute(i).name(), values);
+            }
+            else
+            {
+                position[i] = kept++;
+                attributes[position[i]] = (Attribute) data.attribute(i).copy();
             }
         }
+        FastVector header = new FastVector(len);
+        for (int i=0; i<len; i++)
+            header.addElement(attributes[i]);
+
+        Instances retVal = new Instances(data.relationName(), header, 0);
+        if (data.classIndex() >= 0)
+            retVal.setClassIndex(position[data.classIndex()]);
         return retVal;
 	}
 	
+	/**
+	 * Bin of a value is the first cut point it is less or equal to, the number of cut points if none
+	 * @param cutPoints ascending cut points, null for attribute kept as is
+	 * @param value value, missing value kept
+	 * @param binary true to give the bins in reverse order
+	 * @return bin index, or the value itself if not split
+	 */
+	private static double bin(double[] cutPoints, double value, boolean binary)
+	{
+        if (cutPoints == null || Instance.isMissingValue(value))
+            return value;
+        int bin = 0;
+        while (bin < cutPoints.length && Double.compare(value, cutPoints[bin]) > 0)
+            bin++;
+        return binary ? cutPoints.length - bin : bin;
+	}
+	
 	/**
 	 * Split numeric attribute for supplied test set using binary split
 	 * @param data test set
@@ -339,35 +562,19 @@ public class CustomJ48 extends Classifier
 	 */
 	public Instances binarySplitNumericSuppliedTest(Instances data) throws Exception
 	{
-        Instances retVal = new Instances(data);
+        double[][] cutPoints = new double[data.numAttributes()][];
+        String[][] labels = new String[data.numAttributes()][];
         int count = 0;
-        int len = data.numAttributes();
-        for (int i=0; i<len; i++)
+        for (int i=0; i<data.numAttributes(); i++)
         {
             if (data.attribute(i).isNumeric()) 
-            {			
-                retVal.deleteAttributeAt(i);
-
-                Add filter = new Add();
-                filter.setAttributeIndex("first");
-                filter.setNominalLabels("moreThan"+Integer.toString(infoBinarySplit.get(count))+", lessEqualThan"+Double.toString(infoBinarySplit.get(count)));
-                filter.setAttributeName(data.attribute(i).name());
-                filter.setInputFormat(retVal);
-                retVal = Filter.useFilter(retVal, filter);
-
-                for (int j=0; j<data.numInstances(); j++)
-                {
-                    if (Double.compare(data.instance(j).value(i), infoBinarySplit.get(count)) > 0) {
-                        retVal.instance(j).setValue(retVal.attribute(data.attribute(i).name()), 0);
-                    }
-                    else {
-                        retVal.instance(j).setValue(retVal.attribute(data.attribute(i).name()), 1);
-                    }
-                }
+            {
+                cutPoints[i] = new double[] {infoBinarySplit.get(count)};
+                labels[i] = binarySplitLabels(infoBinarySplit.get(count));
                 count+=1;
             }
         }
-        return retVal;
+        return splitNumericAttributes(data, cutPoints, labels, true);
 	}
         
     /**
@@ -378,49 +585,19 @@ public class CustomJ48 extends Classifier
      */
     public Instances multiSplitNumericSuppliedTest(Instances data) throws Exception
 	{
-        Instances retVal = new Instances(data);
+        double[][] cutPoints = new double[data.numAttributes()][];
+        String[][] labels = new String[data.numAttributes()][];
         int count = 0;
-        int len = data.numAttributes();
-        for (int i=0; i<len; i++)
+        for (int i=0; i<data.numAttributes(); i++)
         {
             if (data.attribute(i).isNumeric()) 
-            {			
-                retVal.deleteAttributeAt(i);
-
-                Add filter = new Add();
-                filter.setAttributeIndex("first");
-                String nominalLabels = "";
-                for (int x=0; x<=infoMultiSplit.get(count).size(); x++)
-                {
-                     nominalLabels += "<="+Double.toString(infoMultiSplit.get(count).get(x));
-                }
-                nominalLabels += ">"+Double.toString(infoMultiSplit.get(count).get(infoMultiSplit.get(count).size()-1));
-                
-                filter.setNominalLabels(nominalLabels);
-                filter.setAttributeName(data.attribute(i).name());
-                filter.setInputFormat(retVal);
-                retVal = Filter.useFilter(retVal, filter);
-
-                for (int j=0; j<data.numInstances(); j++)
-                {
-                    boolean found = false;
-                    for (int x=0; x<infoMultiSplit.get(count).size() && !found; x++)
-                    {
-                        if (Double.compare(data.instance(j).value(i),infoMultiSplit.get(count).get(x)) <= 0)
-                        {
-                            retVal.instance(j).setValue(retVal.attribute(data.attribute(i).name()), x);
-                            found = true;
-                        }
-                    }
-                    if (!found) //more than last value
-                    {
-                        retVal.instance(j).setValue(retVal.attribute(data.attribute(i).name()), infoMultiSplit.get(count).size());
-                    }
-                }
+            {
+                cutPoints[i] = toArray(infoMultiSplit.get(count));
+                labels[i] = multiSplitLabels(infoMultiSplit.get(count));
                 count+=1;
             }
         }
-        return retVal;
+        return splitNumericAttributes(data, cutPoints, labels, false);
 	}
 	
 	/**
@@ -428,76 +605,204 @@ public class CustomJ48 extends Classifier
 	 * @param grandparent a node
 	 * @param parent a node
 	 * @param child a node
+	 * @param data instances reaching child, for performance testing
 	 */
 	public void pruneTree (Tree grandparent, Tree parent, Tree child, Instances data) 
 	{
-        boolean found = true;
-        if (parent!=null) //safety measure
+        pruneTree(grandparent, parent, child, new ColumnarDataset(data));
+	}
+	
+	/**
+	 * Prune using subtree raising method
+	 * Every row is routed down the tree once, a raise is then decided from the rows of the replaced node only
+	 * @param grandparent a node
+	 * @param parent a node
+	 * @param child a node
+	 * @param data rows reaching child, in columns
+	 */
+	private void pruneTree (Tree grandparent, Tree parent, Tree child, ColumnarDataset data) 
+	{
+        PruneState state = new PruneState(data);
+        route(state, child, 0, data.numRows());
+        pruneTree(grandparent, parent, child, state, true);
+	}
+	
+	/**
+	 * Prune using subtree raising method
+	 * @param grandparent a node
+	 * @param parent a node
+	 * @param child a node
+	 * @param state rows and class counts of every node
+	 * @param attached true if parent is still part of the tree, raising inside a detached subtree never changes the accuracy
+	 */
+	private void pruneTree (Tree grandparent, Tree parent, Tree child, PruneState state, boolean attached) 
+	{
+        if (parent!=null && indexOfChild(parent, child) < 0) //safety measure
+            return;
+
+        if (child.getAttribute() == null) //at leaf
         {
-            found = false;
-            Tree[] childList = parent.getChildren();
-            for (int i=0; i<childList.length && !found; i++) 
-            {
-                if (child.equals(childList[i]))
-                {
-                    found = true;
-                }
-            }
+            subTreeRaising(grandparent, parent, child, state, attached);
         }
-        if (found) 
-        {
-            if (child.getAttribute() == null) //at leaf
+        else { //not at leaf
+            Tree[] childList = child.getChildren();
+            for (int i=0; i<childList.length; i++)
             {
-                subTreeRaising(grandparent, parent, child, data);
+                //child is detached once one of its children has been raised to its place
+                boolean childAttached = attached && (parent==null || indexOfChild(parent, child) >= 0);
+                pruneTree(parent, child, childList[i], state, childAttached);
             }
-            else { //not at leaf
-                Tree[] childList = child.getChildren();
-                for (int i=0; i<childList.length; i++)
-                {
-                    pruneTree(parent, child, childList[i], data);
-                }
 
-                if (grandparent!=null && parent!=null && child!=null) //try subtree raising
-                {
-                    subTreeRaising(grandparent, parent, child, data);
-                }
-            }
+            subTreeRaising(grandparent, parent, child, state, attached);
         }
 	}
 	
 	/**
 	 * Subtree raising test if the subtree raising makes performance better
+	 * Only the rows of parent are affected, so the accuracy is compared on them
 	 * @param grandparent
 	 * @param parent
 	 * @param child
-	 * @param data set for performance testing
+	 * @param state rows and class counts of every node
+	 * @param attached true if parent is still part of the tree
 	 */
-	private void subTreeRaising(Tree grandparent, Tree parent, Tree child, Instances data)
+	private void subTreeRaising(Tree grandparent, Tree parent, Tree child, PruneState state, boolean attached)
 	{
-        if (grandparent!=null && parent!=null && child!=null) 
+        if (grandparent!=null && parent!=null && child!=null && attached) 
         {
-            Tree[] childList = grandparent.getChildren();
-            boolean found = false;
-            int idx = 0;
-            for (int i=0; i<childList.length && !found; i++)
+            int idx = indexOfChild(grandparent, parent);
+            if (idx < 0)
+                return;
+
+            int[] slice = state.slices.get(parent);
+            int correctBefore = correctCount(state, parent);
+            int correctAfter;
+            if (child.getAttribute() == null)
+                correctAfter = state.classCounts.get(parent)[(int) child.getClassValue()];
+            else
+                correctAfter = correctCount(state, child, slice[0], slice[1]);
+
+            //change parent node using child node if the performance is better
+            if (correctAfter > correctBefore)
             {
-                if (childList[i].getAttribute()==parent.getAttribute())
-                {
-                    found = true;
-                    idx = i;
+                grandparent.addChild(idx, child);
+                if (child.getAttribute() == null) {
+                    state.slices.put(child, slice);
+                    state.classCounts.put(child, state.classCounts.get(parent));
                 }
+                else
+                    route(state, child, slice[0], slice[1]);
             }
+        }
+	}
+	
+	/**
+	 * Rows and class counts of every node of the tree being pruned
+	 */
+	private static class PruneState
+	{
+        private ColumnarDataset data;
+        private int[] rows;
+        private IdentityHashMap<Tree, int[]> slices; //node -> {from, to} of its rows
+        private IdentityHashMap<Tree, int[]> classCounts; //node -> number of its rows per class
+
+        PruneState(ColumnarDataset data)
+        {
+            this.data = data;
+            this.rows = RowPartition.identity(data.numRows());
+            this.slices = new IdentityHashMap<Tree, int[]>();
+            this.classCounts = new IdentityHashMap<Tree, int[]>();
+        }
+	}
+	
+	/**
+	 * Route rows down a subtree, missing value follows the most probable branch as in classification
+	 * @param state rows and class counts of every node, updated for the subtree
+	 * @param tree root of the subtree
+	 * @param from first index of the subtree rows
+	 * @param to last index of the subtree rows, exclusive
+	 */
+	private void route(PruneState state, Tree tree, int from, int to)
+	{
+        int[] counts = new int[state.data.numClasses()];
+        state.data.countClasses(counts, state.rows, from, to);
+        state.slices.put(tree, new int[] {from, to});
+        state.classCounts.put(tree, counts);
+
+        if (tree.getAttribute() != null)
+        {
+            int[] bounds;
+            if (tree.getAttribute().isNumeric())
+                bounds = RowPartition.partition(state.data, state.rows, from, to, tree.getAttribute().index(), tree.getSplitPoint(), maxIndex(tree.getProbs()));
+            else
+                bounds = RowPartition.partition(state.data, state.rows, from, to, tree.getAttribute().index(), maxIndex(tree.getProbs()));
+            Tree[] childList = tree.getChildren();
+            for (int i=0; i<childList.length; i++)
+            {
+                route(state, childList[i], bounds[i], bounds[i+1]);
+            }
+        }
+	}
+	
+	/**
+	 * @param state rows and class counts of every node
+	 * @param tree node of the tree
+	 * @return number of rows reaching the node that it classifies correctly
+	 */
+	private int correctCount(PruneState state, Tree tree)
+	{
+        if (tree.getAttribute() == null)
+            return state.classCounts.get(tree)[(int) tree.getClassValue()];
 
-            double accuracy1 = this.accuracyPerformance(data);
-            //change parent node using child node
-            grandparent.addChild(idx, child);
-            //test performance, if worse then back to before
-            double accuracy2 = this.accuracyPerformance(data);
-            if (accuracy1>=accuracy2) //revert if the performance worse
+        int count = 0;
+        Tree[] childList = tree.getChildren();
+        for (int i=0; i<childList.length; i++)
+        {
+            count += correctCount(state, childList[i]);
+        }
+        return count;
+	}
+	
+	/**
+	 * @param state rows and class counts of every node, not modified
+	 * @param tree node of the tree
+	 * @param from first index of the rows
+	 * @param to last index of the rows, exclusive
+	 * @return number of rows the subtree would classify correctly
+	 */
+	private int correctCount(PruneState state, Tree tree, int from, int to)
+	{
+        int count = 0;
+        for (int i=from; i<to; i++)
+        {
+            int row = state.rows[i];
+            Tree node = tree;
+            while (node.getAttribute() != null)
             {
-                grandparent.addChild(idx, parent);
+                node = node.getChild(branch(node, state.data.value(node.getAttribute().index(), row)));
             }
+            if (node.getClassValue() == state.data.classValue(row))
+                count++;
         }
+        return count;
+	}
+	
+	/**
+	 * @param parent a node
+	 * @param child a node
+	 * @return index of child among the children of parent, -1 if it is not one of them
+	 */
+	private int indexOfChild(Tree parent, Tree child)
+	{
+        Tree[] childList = parent.getChildren();
+        if (childList == null)
+            return -1;
+        for (int i=0; i<childList.length; i++)
+        {
+            if (childList[i] == child)
+                return i;
+        }
+        return -1;
 	}
 	
 	/**
@@ -518,13 +823,60 @@ public class CustomJ48 extends Classifier
         return count / (double)data.numInstances();
 	}
 	
+	/**
+	 * Map every attribute of the split training data back to the original attribute,
+	 * numeric attributes are binned with the thresholds of the split
+	 * @param data training data after numeric split
+	 * @return binding of the tree attributes to the original attributes
+	 */
+	private CompiledTree.Binding inputBinding(Instances data)
+	{
+        CompiledTree.Binding binding = new CompiledTree.Binding(data.numAttributes());
+        int count = 0;
+        for (int i=0; i<trainingHeader.numAttributes(); i++)
+        {
+            Attribute att = trainingHeader.attribute(i);
+            int treeAttribute = data.attribute(att.name()).index();
+            if (att.isNumeric() && (binaryNumericSplittingOption==1 || binaryNumericSplittingOption==0)) //other thresholds are held by the tree
+            {
+                if (binaryNumericSplittingOption==1) {
+                    double[] cutPoints = {infoBinarySplit.get(count)};
+                    int[] binValues = {1, 0}; //lessEqualThan is the second value
+                    binding.bind(treeAttribute, i, cutPoints, binValues);
+                }
+                else {
+                    ArrayList<Double> thresholds = infoMultiSplit.get(count);
+                    double[] cutPoints = new double[thresholds.size()];
+                    for (int x=0; x<cutPoints.length; x++)
+                        cutPoints[x] = thresholds.get(x);
+                    binding.bind(treeAttribute, i, cutPoints, null);
+                }
+                count++;
+            }
+            else
+                binding.bind(treeAttribute, i);
+        }
+        return binding;
+	}
+	
 	/**
 	 * Classify instance
+	 * @param instance instance in the original attribute space of the training data
 	 */
 	public double classifyInstance(Instance instance){
+        if (compiledTree != null)
+            return compiledTree.classify(instance);
         return classifyInstance(instance, decisionTree);
 	}
 	
+	/**
+	 * @return tree as grown, its attributes are those of the split training data
+	 */
+	Tree decisionTree()
+	{
+        return decisionTree;
+	}
+	
 	/**
 	 * Classify instance at specific node
 	 * @param instance
@@ -533,21 +885,31 @@ public class CustomJ48 extends Classifier
 	 */
 	private double classifyInstance(Instance instance, Tree tree)
 	{
-        //instance = replaceMissingAttribute(instance);
         if(tree.getAttribute() == null){
             return tree.getClassValue();
         }else{
-            if (instance.isMissing(tree.getAttribute())) 
-            {
-                return classifyInstance(instance, tree.getChild(this.maxIndex(tree.getProbs())));
-            }
-            else
-                return classifyInstance(instance, tree.getChild((int) instance.value(tree.getAttribute())));
+            return classifyInstance(instance, tree.getChild(branch(tree, instance.value(tree.getAttribute()))));
         }
 	}
+	
+	/**
+	 * @param tree node with attribute
+	 * @param value attribute value, as weka Instance value
+	 * @return branch followed by the value, most probable branch if missing
+	 */
+	private int branch(Tree tree, double value)
+	{
+        if (Instance.isMissingValue(value))
+            return this.maxIndex(tree.getProbs());
+        else if (tree.getAttribute().isNumeric())
+            return Double.compare(value, tree.getSplitPoint()) > 0 ? 1 : 0;
+        else
+            return (int) value;
+	}
         
     /**
      * Classify instances - for supplied test set
+     * Numeric attributes are split with the thresholds of the training data, missing value follows the most probable branch
      * @param data instances
      * @return double, classes for each instance
      * @throws Exception 
@@ -555,13 +917,6 @@ public class CustomJ48 extends Classifier
     public ArrayList<Double> classifyInstances(Instances data) throws Exception
     {
         data.deleteWithMissingClass(); //deal with missing class
-
-        if (binaryNumericSplittingOption==1)
-            data = new Instances(binarySplitNumericAttribute(data)); //handle numeric attributes using binary split
-        else //multisplit
-            data = new Instances(multiSplitNumericAttribute(data));
-        generateAttributesValueDistribution(data);
-        data = new Instances(replaceMissingAttribute(data)); //handles attributes that has missing value
         
         ArrayList<Double> retVal = new ArrayList();
         for (int i=0; i<data.numInstances(); i++)
@@ -571,46 +926,97 @@ public class CustomJ48 extends Classifier
         
         return retVal;
     }
-	
-	private double calculateNonMissingValueDistribution(Instances data, Attribute att){
-		double count = 0.0;
-		Enumeration instances = data.enumerateInstances();
-		
-		while(instances.hasMoreElements()){
-			Instance inst = (Instance) instances.nextElement();
-			if(inst.value(att) != Instance.missingValue()){
-				count++;
-			}
-		}
-
-		return count;		
-	}
     
+    /**
+     * Classify a block of rows
+     * @param rows attribute values in the original attribute space of the training data, as weka Instance values
+     * @param predictions filled with class value index of each row
+     */
+    public void classifyInstances(double[][] rows, int[] predictions)
+    {
+        checkBuilt();
+        compiledTree.classify(rows, predictions);
+    }
+    
+    /**
+     * Classify a block of rows
+     * @param rows attribute values in the original attribute space of the training data, as weka Instance values
+     * @param predictions filled with class value of each row
+     */
+    public void classifyInstances(double[][] rows, double[] predictions)
+    {
+        checkBuilt();
+        compiledTree.classify(rows, predictions);
+    }
+    
+    /**
+     * Classify a columnar block of rows
+     * @param block rows in the original attribute space of the training data
+     * @param predictions filled with class value index of each row
+     */
+    public void classifyInstances(ColumnarDataset block, int[] predictions)
+    {
+        checkBuilt();
+        compiledTree.classify(block, predictions);
+    }
+    
+    private void checkBuilt()
+    {
+        if (compiledTree == null)
+            throw new IllegalStateException("J48: No model built yet.");
+    }
+	
 	/**
 	 * Build J48 tree
-	 * @param data training data, no missing value
+	 * @param data training data in columns, no missing value, shared by every node
+	 * @param rows row indexes into data
+	 * @param from first index of the node rows
+	 * @param to last index of the node rows, exclusive
+	 * @param parentClass dominant class of the parent node, used for empty node
+	 * @param stats class statistics of the node rows, from the split of the parent
 	 * @param tree
-         * @param selectedAttr already selected attribute at parents of the node
+         * @param selectedAttr already selected attribute at parents of the node, not modified
 	 */
-	public void generateTree(Instances data, Instances parentData, Tree tree, ArrayList<Attribute> selectedAttr)
+	public void generateTree(ColumnarDataset data, int[] rows, int from, int to, double parentClass, NodeStatistics stats, Tree tree, ArrayList<Attribute> selectedAttr)
 	{
-        Enumeration attributes = data.enumerateAttributes();
+        Enumeration attributes = data.header().enumerateAttributes();
         double[] gainRatio = new double[data.numAttributes()];
+        int numInstances = to - from;
+        boolean[] candidate = candidates(data, selectedAttr);
+        ContingencyTable[] tables = contingencyTables(data, rows, from, to, candidate);
+        double entropy = stats.getEntropy();
+        double splitInfo = stats.getEntropy(); //split info over the class distribution is its entropy
+        PresortedColumns.Split[] splits = new PresortedColumns.Split[data.numAttributes()];
+        int numGainEvaluations = 0;
+        if (binned != null && stats.getHistograms() == null && !stats.isPure()) //root, the other nodes get them from the parent split
+            stats.setHistograms(binned.histograms(rows, from, to));
 
         //gain ratio calculation
         while(attributes.hasMoreElements())
         {
             Attribute attribute = (Attribute) attributes.nextElement();
-            if (!selectedAttr.contains(attribute)) {
+            if (candidate[attribute.index()]) {
             
-                double infoGain = informationGain(data, attribute);
-                double splitInfo = splitInfo(data);
+                double infoGain;
+                int numMissingValue;
+                if (attribute.isNumeric()) {
+                    if (binned != null)
+                        splits[attribute.index()] = binned.bestSplit(attribute.index(), stats.getHistograms(), entropy, numInstances);
+                    else
+                        splits[attribute.index()] = presorted.bestSplit(attribute.index(), from, to, entropy, numInstances);
+                    infoGain = splits[attribute.index()].gain;
+                    numMissingValue = splits[attribute.index()].numMissing;
+                }
+                else {
+                    infoGain = tables[attribute.index()].informationGain(entropy, numInstances);
+                    numMissingValue = tables[attribute.index()].getMissingTotal();
+                }
+                numGainEvaluations++;
                 if (Double.compare(splitInfo, 0.0)!=0 && !Double.isNaN(infoGain)) {
-                	double numNonMissingValue = calculateNonMissingValueDistribution(data, attribute);
-                	double numInstances = data.numInstances();
+                	double numNonMissingValue = numInstances - numMissingValue;
                 	double timesFactor = numNonMissingValue / numInstances;
                 	
-                	if (Double.compare(numNonMissingValue,0.0) == 0 || Double.compare(numInstances,0.0) == 0) {
+                	if (Double.compare(numNonMissingValue,0.0) == 0 || numInstances == 0) {
                 		timesFactor = 0.0;
                 	}
                     gainRatio[attribute.index()] = timesFactor * (infoGain / splitInfo);
@@ -624,52 +1030,126 @@ public class CustomJ48 extends Classifier
                 gainRatio[attribute.index()] = 0.0;
         }
         
+        METRICS.recordNode(numInstances, numGainEvaluations);
         Attribute highestIGAtt = data.attribute(maxIndex(gainRatio));
         
         //build decision tree
         tree.setAttribute(highestIGAtt);
 
-        if(Double.compare(gainRatio[highestIGAtt.index()], 0.0) == 0) //at leaf
+        if(numInstances == 0 || Double.compare(gainRatio[highestIGAtt.index()], 0.0) == 0) //at leaf
         {
             tree.setAttribute(null);
-            if (data.numInstances()!=0) {              
-                double[] distribution = new double[data.numClasses()];
-                Enumeration instances = data.enumerateInstances();
-
-                while(instances.hasMoreElements())
-                {
-                    Instance instance = (Instance) instances.nextElement();
-                    distribution[(int) instance.classValue()]++;
-                }
-
-                tree.setClassValue(maxIndex(distribution));
+            if (numInstances!=0) {              
+                tree.setClassValue(stats.majorityClass());
             }
             else //penanganan example kosong
             {
-                tree.setClassValue(dominantClasses(parentData));
+                tree.setClassValue(parentClass);
             }
             tree.setClassAttribute(data.classAttribute());
         }
         else //not at leaf, build the children
         {
-            selectedAttr.add(highestIGAtt);
-            Instances[] splittedData = split(data, highestIGAtt);
+            //every branch gets its own copy, so sibling subtrees are independent
+            //numeric attribute can be split again below with another threshold
+            ArrayList<Attribute> childSelectedAttr = new ArrayList<Attribute>(selectedAttr);
+            if (highestIGAtt.isNominal())
+                childSelectedAttr.add(highestIGAtt);
+            double dominantClass = stats.majorityClass();
+            int[] bounds;
+            NodeStatistics[] childStats;
+            if (highestIGAtt.isNumeric()) {
+                tree.setSplitPoint(splits[highestIGAtt.index()].splitPoint);
+                if (binned != null)
+                    bounds = RowPartition.partition(data, rows, from, to, highestIGAtt.index(), tree.getSplitPoint(), 0);
+                else
+                    bounds = presorted.partition(rows, from, to, highestIGAtt.index(), tree.getSplitPoint());
+                childStats = stats.binaryChildren(splits[highestIGAtt.index()].aboveCounts);
+            }
+            else {
+                if (presorted != null) //keep the sorted numeric attributes in step with the rows
+                    bounds = presorted.partition(rows, from, to, highestIGAtt.index());
+                else
+                    bounds = RowPartition.partition(data, rows, from, to, highestIGAtt.index());
+                childStats = NodeStatistics.children(tables[highestIGAtt.index()], 0); //missing value goes to the first child
+            }
+            if (binned != null)
+                binned.childHistograms(stats, childStats, rows, bounds);
        
-            Tree[] children = new Tree[tree.getAttribute().numValues()];
-            double[] probs = new double[tree.getAttribute().numValues()];
+            Tree[] children = new Tree[bounds.length - 1];
+            double[] probs = new double[bounds.length - 1];
             
             for (int i=0; i<probs.length; i++)
             {
-                probs[i] = (double) splittedData[i].numInstances() / (double) data.numInstances();
+                probs[i] = (double) (bounds[i+1] - bounds[i]) / (double) numInstances;
             }
             tree.addProbs(probs);
 
             for(int i = 0; i < children.length; i++)
             {
                 children[i] = new Tree();
-                tree.addChildren(children);
-                generateTree(splittedData[i], data, children[i], selectedAttr);
             }
+            tree.addChildren(children);
+
+            if (pool != null && subtreeCutoff > 0 && numInstances > subtreeCutoff) {
+                ArrayList<SubtreeTask> tasks = new ArrayList<SubtreeTask>();
+                for(int i = 0; i < children.length; i++)
+                {
+                    tasks.add(new SubtreeTask(data, rows, bounds[i], bounds[i+1], dominantClass, childStats[i], children[i], childSelectedAttr));
+                }
+                if (ForkJoinTask.inForkJoinPool())
+                    ForkJoinTask.invokeAll(tasks);
+                else
+                    pool.invoke(new SubtreeTask(tasks));
+            } else {
+                for(int i = 0; i < children.length; i++)
+                {
+                    generateTree(data, rows, bounds[i], bounds[i+1], dominantClass, childStats[i], children[i], childSelectedAttr);
+                }
+            }
+        }
+	}
+	
+	/**
+	 * Fork/join task building one child subtree, or forking a group of them
+	 */
+	private class SubtreeTask extends RecursiveAction
+	{
+        private static final long serialVersionUID = 1L;
+        private ColumnarDataset data;
+        private int[] rows;
+        private int from;
+        private int to;
+        private double parentClass;
+        private NodeStatistics stats;
+        private Tree tree;
+        private ArrayList<Attribute> selectedAttr;
+        private ArrayList<SubtreeTask> group;
+
+        SubtreeTask(ColumnarDataset data, int[] rows, int from, int to, double parentClass, NodeStatistics stats, Tree tree, ArrayList<Attribute> selectedAttr)
+        {
+            this.data = data;
+            this.rows = rows;
+            this.from = from;
+            this.to = to;
+            this.parentClass = parentClass;
+            this.stats = stats;
+            this.tree = tree;
+            this.selectedAttr = selectedAttr;
+        }
+
+        SubtreeTask(ArrayList<SubtreeTask> group)
+        {
+            this.group = group;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (group != null)
+                invokeAll(group);
+            else
+                generateTree(data, rows, from, to, parentClass, stats, tree, selectedAttr);
         }
 	}
 	
@@ -690,30 +1170,6 @@ public class CustomJ48 extends Classifier
 		return (double) maxIndex(classValueCount);
 	}
 	
-	/**
-	 * Split instances
-	 * @param data
-	 * @param att
-	 * @return splitted instances
-	 */
-	private Instances[] split(Instances data, Attribute att)
-	{
-        Instances[] splittedData = new Instances[att.numValues()];
-
-        for(int i = 0; i < splittedData.length; i++)
-        {
-            splittedData[i] = new Instances(data, data.numInstances());
-            splittedData[i].delete();
-        }
-
-        for(int i = 0; i < data.numInstances(); i++)
-        {			
-            splittedData[(int) data.instance(i).value(att)].add(data.instance(i));
-        }
-
-        return splittedData;
-	}
-	
 	/**
 	 * @param array
 	 * @return array's index which hold highest value 
@@ -732,91 +1188,156 @@ public class CustomJ48 extends Classifier
 	}
 	
 	/**
-	 * Calculate information gain
+	 * Count attribute value x class of every candidate attribute, one pass over each attribute column
 	 * @param data training data
-	 * @param att
-	 * @return information gain
+	 * @param rows row indexes into data
+	 * @param from first index of the node rows
+	 * @param to last index of the node rows, exclusive
+	 * @param candidate true for the attributes scored at the node
+	 * @return contingency table per attribute index, null for class, non candidate and numeric attributes
 	 */
-	private double informationGain(Instances data, Attribute att)
+	private ContingencyTable[] contingencyTables(ColumnarDataset data, int[] rows, int from, int to, boolean[] candidate)
 	{
-        double informationGain = entropy(data);
-        int numOfLabels = att.numValues();
-        
-        Instances[] instancesDistribution = new Instances[numOfLabels];
+        ContingencyTable[] tables = new ContingencyTable[data.numAttributes()];
+        int numCandidates = 0;
+        int[] candidates = new int[data.numAttributes()];
 
-        for(int i = 0; i < instancesDistribution.length; i++)
+        for (int i=0; i<data.numAttributes(); i++)
         {
-            instancesDistribution[i] = new Instances(data, data.numInstances());
-            instancesDistribution[i].delete();
-        }
- 
-        for(int i = 0; i < data.numInstances(); i++) 
-        {
-        	if (!data.instance(i).isMissing(att))
-        		instancesDistribution[(int) data.instance(i).value(att)].add(data.instance(i));
+            if (candidate[i] && data.attribute(i).isNominal()) {
+                tables[i] = new ContingencyTable(data.attribute(i).numValues(), data.numClasses());
+                candidates[numCandidates++] = i;
+            }
         }
-        
-        for(int i = 0; i < numOfLabels; i++)
-        {
-            double numInstancesOfLabel = (double) instancesDistribution[i].numInstances();
-            informationGain -=  numInstancesOfLabel / (double) data.numInstances() * entropy(instancesDistribution[i]);
+
+        if (pool != null && to - from > parallelThreshold) {
+            AttributeCountTask task = new AttributeCountTask(data, rows, from, to, tables, candidates, 0, numCandidates);
+            if (ForkJoinTask.inForkJoinPool())
+                task.invoke(); //already on a worker thread
+            else
+                pool.invoke(task);
+        } else {
+            for(int i = 0; i < numCandidates; i++)
+            {
+                data.count(tables[candidates[i]], candidates[i], rows, from, to);
+            }
         }
-        
-        return informationGain;
+
+        return tables;
 	}
 	
 	/**
-	 * Split info calculation
-	 * @param data
-	 * @return splt info
+	 * Attributes scored at a node: every attribute not selected at a parent,
+	 * or a random subset of them for a forest member
+	 * @param data training data
+	 * @param selectedAttr already selected attribute at parents of the node
+	 * @return true per candidate attribute index
 	 */
-	private double splitInfo(Instances data)
+	private boolean[] candidates(ColumnarDataset data, ArrayList<Attribute> selectedAttr)
 	{
-        double splitInfo = 0.0;
-        int[]  distribution = new int[data.numClasses()];
-
-        for(int i = 0; i < data.numInstances(); i++)
+        boolean[] candidate = new boolean[data.numAttributes()];
+        int[] candidates = new int[data.numAttributes()];
+        int numCandidates = 0;
+        Enumeration attributes = data.header().enumerateAttributes();
+        while(attributes.hasMoreElements())
         {
-            distribution[(int) data.instance(i).classValue()]++;
+            Attribute attribute = (Attribute) attributes.nextElement();
+            if (!selectedAttr.contains(attribute)) {
+                candidate[attribute.index()] = true;
+                candidates[numCandidates++] = attribute.index();
+            }
         }
 
-        for(int i = 0; i < data.numClasses(); i++)
-        {
-            double temp = (double) distribution[i] / (double) data.numInstances(); 
-
-            if(Double.compare(temp, 0) != 0)
-                splitInfo += (temp * DoubleMath.log2(temp));
+        if (random != null && numRandomAttributes < numCandidates) {
+            //keep the first numRandomAttributes of a partial shuffle
+            for (int i=0; i<numRandomAttributes; i++)
+            {
+                int j = i + random.nextInt(numCandidates - i);
+                int att = candidates[i];
+                candidates[i] = candidates[j];
+                candidates[j] = att;
+            }
+            for (int i=numRandomAttributes; i<numCandidates; i++)
+                candidate[candidates[i]] = false;
         }
-
-        return Math.abs(splitInfo);
+        return candidate;
+	}
+	
+    /**
+     * @return attributes of the training data, before numeric attributes are split, class index set
+     */
+    public Instances trainingHeader()
+    {
+        checkBuilt();
+        return new Instances(trainingHeader, 0);
+    }
+    
+    /**
+     * @return class attribute index of the training data
+     */
+    public int classIndex()
+    {
+        checkBuilt();
+        return trainingHeader.classIndex();
     }
 	
-	/**
-	 * Entropy calculation
-	 * @param data instances
-	 * @return entropy
-	 */
-	private double entropy(Instances data){
-        double entropy = 0.0;
-        int numOfClasses = data.classAttribute().numValues();
-        int[] numOfInstancesPerClass = new int[numOfClasses];
-
-        for(int i = 0; i < data.numInstances(); i++)
+    /**
+     * Write the model for ModelFile: training schema, numeric split options and thresholds, node table
+     * @param out output
+     * @throws IOException 
+     */
+    public void writeModel(DataOutputStream out) throws IOException
+    {
+        checkBuilt();
+        ModelFile.writeHeader(out, trainingHeader);
+        out.writeByte(binaryNumericSplittingOption);
+        out.writeInt(numberOfMultiSplit);
+        out.writeInt(infoBinarySplit.size());
+        for (int i=0; i<infoBinarySplit.size(); i++)
+            out.writeInt(infoBinarySplit.get(i));
+        out.writeInt(infoMultiSplit.size());
+        for (int i=0; i<infoMultiSplit.size(); i++)
         {
-            numOfInstancesPerClass[(int) data.instance(i).classValue()]++;
+            out.writeInt(infoMultiSplit.get(i).size());
+            for (int x=0; x<infoMultiSplit.get(i).size(); x++)
+                out.writeDouble(infoMultiSplit.get(i).get(x));
         }
-
-        for(int i = 0; i < numOfClasses; i++)
+        ModelFile.writeTree(out, decisionTree);
+    }
+    
+    /**
+     * Read a model written by writeModel, the attribute space of the tree is rebuilt from the schema and the thresholds
+     * @param in input
+     * @throws Exception 
+     */
+    public void readModel(DataInputStream in) throws Exception
+    {
+        trainingHeader = ModelFile.readHeader(in);
+        binaryNumericSplittingOption = in.readByte();
+        numberOfMultiSplit = in.readInt();
+        infoBinarySplit = new ArrayList();
+        int numBinarySplit = in.readInt();
+        for (int i=0; i<numBinarySplit; i++)
+            infoBinarySplit.add(in.readInt());
+        infoMultiSplit = new ArrayList();
+        int numMultiSplit = in.readInt();
+        for (int i=0; i<numMultiSplit; i++)
         {
-            if(numOfInstancesPerClass[i] != 0)
-            {
-                double temp = (double) numOfInstancesPerClass[i] / (double) data.numInstances();
-                entropy -= temp * DoubleMath.log2(temp);
-            }
+            int numThresholds = in.readInt();
+            ArrayList<Double> thresholds = new ArrayList();
+            for (int x=0; x<numThresholds; x++)
+                thresholds.add(in.readDouble());
+            infoMultiSplit.add(thresholds);
         }
-
-        return entropy;
-	}
+        
+        Instances treeHeader = new Instances(trainingHeader, 0);
+        if (binaryNumericSplittingOption==1)
+            treeHeader = binarySplitNumericSuppliedTest(treeHeader);
+        else if (binaryNumericSplittingOption==0)
+            treeHeader = multiSplitNumericSuppliedTest(treeHeader);
+        decisionTree = ModelFile.readTree(in, treeHeader);
+        compiledTree = CompiledTree.compile(decisionTree, inputBinding(treeHeader));
+    }
 	
 	/**
 	 * Convert tree to string
@@ -841,14 +1362,17 @@ public class CustomJ48 extends Classifier
 		} 
 		else 
 		{
-			for (int j = 0; j < tree.getAttribute().numValues(); j++) 
+			for (int j = 0; j < tree.getChildren().length; j++) 
 			{
 				text.append("\n");
 				for (int i = 0; i < level; i++) 
 				{
 					text.append("|  ");
 				}
-				text.append(tree.getAttribute().name() + " = " + tree.getAttribute().value(j));
+				if (tree.getAttribute().isNumeric())
+					text.append(tree.getAttribute().name() + (j == 0 ? " <= " : " > ") + tree.getSplitPoint());
+				else
+					text.append(tree.getAttribute().name() + " = " + tree.getAttribute().value(j));
 				text.append(toString(level + 1, tree.getChild(j)));
 			}
 		}
@@ -0,0 +1,279 @@
+package weka.custom_classifier.J48;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import weka.core.Instances;
+import weka.custom_classifier.ColumnarDataset;
+
+/**
+ * Grid search over the numeric splitting options of CustomJ48
+ * Every configuration is built and scored on its own thread, configurations splitting the numeric attributes
+ * the same way (binary split and exact threshold whatever the number of multisplit) share one discretized training set
+ */
+public class GridSearch
+{
+	private ArrayList<Result> configurations;
+	private int numThreads;
+	private HashMap<String, FutureTask<CustomJ48.Discretized>> discretized; //discretized training data by numeric splitting settings
+
+	/**
+	 * Options and measures of one configuration
+	 */
+	public static class Result
+	{
+		private int numericSplittingOption;
+		private int numberOfMultiSplit;
+		private double accuracy;
+		private long buildTime; //milliseconds, discretization not included
+		private long scoreTime; //milliseconds
+		private long discretizeTime; //milliseconds, spent once for the configurations sharing the discretized data
+
+		Result(int numericSplittingOption, int numberOfMultiSplit)
+		{
+			this.numericSplittingOption = numericSplittingOption;
+			this.numberOfMultiSplit = numberOfMultiSplit;
+		}
+
+		public int getNumericSplittingOption()
+		{
+			return numericSplittingOption;
+		}
+
+		public int getNumberOfMultiSplit()
+		{
+			return numberOfMultiSplit;
+		}
+
+		/**
+		 * @return fraction of the test instances classified correctly
+		 */
+		public double getAccuracy()
+		{
+			return accuracy;
+		}
+
+		public long getBuildTime()
+		{
+			return buildTime;
+		}
+
+		public long getScoreTime()
+		{
+			return scoreTime;
+		}
+
+		public long getDiscretizeTime()
+		{
+			return discretizeTime;
+		}
+
+		/**
+		 * @return settings the numeric attributes are split with, equal for configurations sharing the discretized data
+		 */
+		private String splittingKey()
+		{
+			return numericSplittingOption == 0 ? "0/" + numberOfMultiSplit : Integer.toString(numericSplittingOption);
+		}
+
+		public String toString()
+		{
+			return String.format("split=%d multisplit=%3d accuracy=%.4f build=%6dms score=%6dms discretize=%6dms",
+					numericSplittingOption, numberOfMultiSplit, accuracy, buildTime, scoreTime, discretizeTime);
+		}
+	}
+
+	/**
+	 * @param numThreads number of configurations evaluated concurrently
+	 */
+	public GridSearch(int numThreads)
+	{
+		configurations = new ArrayList<Result>();
+		this.numThreads = numThreads;
+	}
+
+	/**
+	 * @param numericSplittingOption 1 for binary split, 0 for multisplit, 2 for exact threshold at every node, 3 for histogram threshold
+	 * @param numberOfMultiSplit the number of threshold classes for multisplit, minimum 3
+	 */
+	public void addConfiguration(int numericSplittingOption, int numberOfMultiSplit)
+	{
+		new CustomJ48().setOption(numericSplittingOption, numberOfMultiSplit); //validate
+		configurations.add(new Result(numericSplittingOption, numberOfMultiSplit));
+	}
+
+	/**
+	 * Add every combination of numeric splitting option and number of multisplit,
+	 * the other options are added once as they do not use the number of multisplit
+	 * @param numericSplittingOptions numeric splitting options
+	 * @param numbersOfMultiSplit numbers of multisplit
+	 */
+	public void addGrid(int[] numericSplittingOptions, int[] numbersOfMultiSplit)
+	{
+		for(int i = 0; i < numericSplittingOptions.length; i++){
+			if(numericSplittingOptions[i] == 0){
+				for(int j = 0; j < numbersOfMultiSplit.length; j++){
+					addConfiguration(0, numbersOfMultiSplit[j]);
+				}
+			}else{
+				addConfiguration(numericSplittingOptions[i], numbersOfMultiSplit.length > 0 ? numbersOfMultiSplit[0] : 10);
+			}
+		}
+	}
+
+	/**
+	 * Build every configuration on the training data and score it on the test data
+	 * @param train training data, class index set
+	 * @param test test data with the attributes of the training data
+	 * @return one result per configuration, in the order they were added
+	 * @throws Exception
+	 */
+	public List<Result> search(Instances train, Instances test) throws Exception
+	{
+		discretized = new HashMap<String, FutureTask<CustomJ48.Discretized>>();
+		ColumnarDataset testColumns = new ColumnarDataset(test);
+		ArrayList<Callable<Result>> tasks = new ArrayList<Callable<Result>>();
+		for(int i = 0; i < configurations.size(); i++){
+			tasks.add(new ConfigurationTask(configurations.get(i), train, testColumns));
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+		try {
+			List<Future<Result>> results = pool.invokeAll(tasks);
+			for(int i = 0; i < results.size(); i++){
+				results.get(i).get(); //rethrow the failure of a configuration
+			}
+		} finally {
+			pool.shutdown();
+			discretized = null;
+		}
+		return configurations;
+	}
+
+	/**
+	 * Discretized training data of a configuration, split by the first configuration needing it,
+	 * the other configurations with the same settings wait for it
+	 * @param result configuration
+	 * @param train training data
+	 * @return discretized training data
+	 */
+	private CustomJ48.Discretized discretized(final Result result, final Instances train) throws Exception
+	{
+		FutureTask<CustomJ48.Discretized> task;
+		boolean owner = false;
+		result.discretizeTime = 0;
+		synchronized(discretized){
+			task = discretized.get(result.splittingKey());
+			if(task == null){
+				task = new FutureTask<CustomJ48.Discretized>(new Callable<CustomJ48.Discretized>() {
+					public CustomJ48.Discretized call() throws Exception {
+						CustomJ48 j48 = new CustomJ48();
+						j48.setOption(result.numericSplittingOption, result.numberOfMultiSplit);
+						return j48.discretize(new Instances(train)); //discretize deletes instances with missing class
+					}
+				});
+				discretized.put(result.splittingKey(), task);
+				owner = true;
+			}
+		}
+		if(owner){
+			long start = System.nanoTime();
+			task.run();
+			result.discretizeTime = (System.nanoTime() - start) / 1000000;
+		}
+		return task.get();
+	}
+
+	/**
+	 * Build and score one configuration
+	 */
+	private class ConfigurationTask implements Callable<Result>
+	{
+		private Result result;
+		private Instances train;
+		private ColumnarDataset test;
+
+		ConfigurationTask(Result result, Instances train, ColumnarDataset test)
+		{
+			this.result = result;
+			this.train = train;
+			this.test = test;
+		}
+
+		@Override
+		public Result call() throws Exception
+		{
+			CustomJ48.Discretized data = discretized(result, train);
+			CustomJ48 j48 = new CustomJ48();
+			j48.setOption(result.numericSplittingOption, result.numberOfMultiSplit);
+
+			long start = System.nanoTime();
+			j48.buildClassifier(data);
+			result.buildTime = (System.nanoTime() - start) / 1000000;
+
+			int[] predictions = new int[test.numRows()];
+			start = System.nanoTime();
+			j48.classifyInstances(test, predictions);
+			result.scoreTime = (System.nanoTime() - start) / 1000000;
+
+			int numLabeled = 0;
+			int numCorrect = 0;
+			for(int i = 0; i < predictions.length; i++){
+				if(test.classValue(i) != ColumnarDataset.MISSING_CLASS){
+					numLabeled++;
+					if(predictions[i] == test.classValue(i)){
+						numCorrect++;
+					}
+				}
+			}
+			result.accuracy = numLabeled == 0 ? 0.0 : (double) numCorrect / (double) numLabeled;
+			return result;
+		}
+	}
+
+	/**
+	 * Print the results, one configuration per line
+	 * @param results results of search
+	 * @param out output
+	 */
+	public static void print(List<Result> results, PrintStream out)
+	{
+		for(int i = 0; i < results.size(); i++){
+			out.println(results.get(i));
+		}
+	}
+
+	/**
+	 * Grid search on a percentage split of an arff file
+	 * @param args arff file, percentage of training data (default 0.66), number of threads (default all cores)
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception
+	{
+		if(args.length < 1){
+			System.out.println("Usage: GridSearch <arff> [training percentage] [threads]");
+			return;
+		}
+		double percentageSplit = args.length > 1 ? Double.parseDouble(args[1]) : 0.66;
+		int numThreads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+		Instances data = CustomJ48.loadDatasetArff(args[0]);
+		data.setClassIndex(data.numAttributes() - 1);
+		data.randomize(new Random(1));
+		int trainSize = (int) Math.round(data.numInstances() * percentageSplit);
+		Instances train = new Instances(data, 0, trainSize);
+		Instances test = new Instances(data, trainSize, data.numInstances() - trainSize);
+
+		GridSearch search = new GridSearch(numThreads);
+		search.addGrid(new int[] {1, 2, 3, 0}, new int[] {3, 5, 10, 20, 50});
+		print(search.search(train, test), System.out);
+	}
+}
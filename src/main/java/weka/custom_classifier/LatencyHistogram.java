@@ -0,0 +1,150 @@
+package weka.custom_classifier;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of non negative long values (nanoseconds, depths), lock free and mergeable
+ * Log-linear buckets: values below 16 are exact, above every power of two is split into 16 buckets,
+ * so a percentile is within 1/16 of the recorded value; recording is one atomic increment
+ */
+public class LatencyHistogram {
+	private static final int SUB_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	private static final int NUM_BUCKETS = (64 - SUB_BITS + 1) * SUB_BUCKETS;
+
+	private AtomicLongArray counts;
+	private AtomicLong count;
+	private AtomicLong sum;
+	private AtomicLong max;
+
+	public LatencyHistogram(){
+		counts = new AtomicLongArray(NUM_BUCKETS);
+		count = new AtomicLong();
+		sum = new AtomicLong();
+		max = new AtomicLong();
+	}
+
+	/**
+	 * @param value value, negative values are recorded as 0
+	 */
+	public void record(long value){
+		record(value, 1);
+	}
+
+	/**
+	 * @param value value, negative values are recorded as 0
+	 * @param times number of times the value is recorded
+	 */
+	public void record(long value, long times){
+		if(value < 0){
+			value = 0;
+		}
+		counts.addAndGet(bucket(value), times);
+		count.addAndGet(times);
+		sum.addAndGet(value * times);
+		long current = max.get();
+		while(value > current && !max.compareAndSet(current, value)){
+			current = max.get();
+		}
+	}
+
+	/**
+	 * Add the values of another histogram, the other histogram is not modified
+	 * @param other histogram
+	 */
+	public void merge(LatencyHistogram other){
+		for(int i = 0; i < NUM_BUCKETS; i++){
+			long bucketCount = other.counts.get(i);
+			if(bucketCount != 0){
+				counts.addAndGet(i, bucketCount);
+			}
+		}
+		count.addAndGet(other.count.get());
+		sum.addAndGet(other.sum.get());
+		long otherMax = other.max.get();
+		long current = max.get();
+		while(otherMax > current && !max.compareAndSet(current, otherMax)){
+			current = max.get();
+		}
+	}
+
+	public long count(){
+		return count.get();
+	}
+
+	public long sum(){
+		return sum.get();
+	}
+
+	public long max(){
+		return max.get();
+	}
+
+	public double mean(){
+		long n = count.get();
+		return n == 0 ? 0.0 : (double) sum.get() / n;
+	}
+
+	/**
+	 * @param quantile in [0, 1], 0.99 for p99
+	 * @return highest value of the bucket holding the quantile, at most the maximum, 0 if empty
+	 */
+	public long percentile(double quantile){
+		long n = count.get();
+		if(n == 0){
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(quantile * n));
+		long seen = 0;
+		for(int i = 0; i < NUM_BUCKETS; i++){
+			seen += counts.get(i);
+			if(seen >= rank){
+				return Math.min(highestValue(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	public void reset(){
+		for(int i = 0; i < NUM_BUCKETS; i++){
+			counts.set(i, 0);
+		}
+		count.set(0);
+		sum.set(0);
+		max.set(0);
+	}
+
+	private static int bucket(long value){
+		if(value < SUB_BUCKETS){
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	private static long highestValue(int bucket){
+		if(bucket < SUB_BUCKETS){
+			return bucket;
+		}
+		int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+		long sub = bucket % SUB_BUCKETS;
+		long width = 1L << (exponent - SUB_BITS);
+		return ((SUB_BUCKETS + sub) << (exponent - SUB_BITS)) + width - 1;
+	}
+
+	/**
+	 * @param scale divisor of the values, 1000 to print nanoseconds as microseconds
+	 * @return count, mean, p50, p99, p999 and maximum, values divided by scale
+	 */
+	public String toString(double scale){
+		return String.format("count=%d mean=%.2f p50=%.2f p99=%.2f p999=%.2f max=%.2f",
+				count(), mean() / scale, percentile(0.5) / scale, percentile(0.99) / scale,
+				percentile(0.999) / scale, max() / scale);
+	}
+
+	public String toString(){
+		return toString(1.0);
+	}
+}
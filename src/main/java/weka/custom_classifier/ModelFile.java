@@ -0,0 +1,263 @@
+package weka.custom_classifier;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+import weka.classifiers.Classifier;
+import weka.core.Attribute;
+import weka.core.FastVector;
+import weka.core.Instances;
+import weka.custom_classifier.Id3.CustomId3;
+import weka.custom_classifier.J48.CustomJ48;
+
+/**
+ * Binary model file of the custom trees, replacing java serialization of the classifier
+ * Layout: magic, version, model kind, then the model: the schema once (relation name, class index,
+ * then name, type and nominal values of every attribute), the fields of the model, and the node table
+ * Node table: number of nodes, then every node breadth first, the root first:
+ * attribute index (-1 for leaf), class value of a leaf, or split point of a numeric node,
+ * branch probabilities if any and the node index of every child
+ */
+public class ModelFile {
+	private static final int MAGIC = 0x574D444C; //"WMDL"
+	private static final int VERSION = 1;
+
+	private static final byte ID3_MODEL = 0;
+	private static final byte J48_MODEL = 1;
+
+	private static final byte NOMINAL_ATTRIBUTE = 0;
+	private static final byte NUMERIC_ATTRIBUTE = 1;
+
+	private ModelFile(){}
+
+	/**
+	 * Write a built custom tree
+	 * @param model CustomId3 or CustomJ48
+	 * @param file output file
+	 * @throws IOException
+	 */
+	public static void write(Classifier model, File file) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			if(model instanceof CustomJ48){
+				out.writeByte(J48_MODEL);
+				((CustomJ48) model).writeModel(out);
+			}else if(model instanceof CustomId3){
+				out.writeByte(ID3_MODEL);
+				((CustomId3) model).writeModel(out);
+			}else{
+				throw new IllegalArgumentException("Not a custom tree: " + model.getClass().getName());
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Read a custom tree, ready to classify
+	 * @param file model file
+	 * @return CustomId3 or CustomJ48
+	 * @throws Exception
+	 */
+	public static Classifier read(File file) throws Exception {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+		try {
+			if(in.readInt() != MAGIC){
+				throw new IOException("Not a model file: " + file);
+			}
+			int version = in.readInt();
+			if(version != VERSION){
+				throw new IOException("Unsupported model version " + version + ": " + file);
+			}
+			byte kind = in.readByte();
+			if(kind == J48_MODEL){
+				CustomJ48 model = new CustomJ48();
+				model.readModel(in);
+				return model;
+			}else if(kind == ID3_MODEL){
+				CustomId3 model = new CustomId3();
+				model.readModel(in);
+				return model;
+			}
+			throw new IOException("Unknown model kind " + kind + ": " + file);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Write the attributes and class index of a header
+	 * @param out output
+	 * @param header instances header, nominal and numeric attributes only
+	 * @throws IOException
+	 */
+	public static void writeHeader(DataOutputStream out, Instances header) throws IOException {
+		out.writeUTF(header.relationName());
+		out.writeInt(header.classIndex());
+		out.writeInt(header.numAttributes());
+		for(int i = 0; i < header.numAttributes(); i++){
+			Attribute att = header.attribute(i);
+			out.writeUTF(att.name());
+			if(att.isNominal()){
+				out.writeByte(NOMINAL_ATTRIBUTE);
+				out.writeInt(att.numValues());
+				for(int j = 0; j < att.numValues(); j++){
+					out.writeUTF(att.value(j));
+				}
+			}else if(att.isNumeric()){
+				out.writeByte(NUMERIC_ATTRIBUTE);
+			}else{
+				throw new IllegalArgumentException("Attribute " + att.name() + " must be nominal or numeric");
+			}
+		}
+	}
+
+	/**
+	 * Read a header written by writeHeader
+	 * @param in input
+	 * @return empty instances with the class index set
+	 * @throws IOException
+	 */
+	public static Instances readHeader(DataInputStream in) throws IOException {
+		String relationName = in.readUTF();
+		int classIndex = in.readInt();
+		int numAttributes = in.readInt();
+		FastVector attributes = new FastVector(numAttributes);
+		for(int i = 0; i < numAttributes; i++){
+			String name = in.readUTF();
+			byte type = in.readByte();
+			if(type == NOMINAL_ATTRIBUTE){
+				int numValues = in.readInt();
+				FastVector values = new FastVector(numValues);
+				for(int j = 0; j < numValues; j++){
+					values.addElement(in.readUTF());
+				}
+				attributes.addElement(new Attribute(name, values));
+			}else if(type == NUMERIC_ATTRIBUTE){
+				attributes.addElement(new Attribute(name));
+			}else{
+				throw new IOException("Unknown attribute type " + type + " of attribute " + name);
+			}
+		}
+		Instances header = new Instances(relationName, attributes, 0);
+		header.setClassIndex(classIndex);
+		return header;
+	}
+
+	/**
+	 * Write the node table of a tree
+	 * @param out output
+	 * @param root root of the tree, its attributes are written as indexes
+	 * @throws IOException
+	 */
+	public static void writeTree(DataOutputStream out, Tree root) throws IOException {
+		ArrayList<Tree> nodes = new ArrayList<Tree>();
+		IdentityHashMap<Tree, Integer> ids = new IdentityHashMap<Tree, Integer>();
+
+		//number the nodes breadth first, a node shared by several parents is written once
+		nodes.add(root);
+		ids.put(root, 0);
+		for(int i = 0; i < nodes.size(); i++){
+			Tree node = nodes.get(i);
+			if(node.getAttribute() != null){
+				Tree[] children = node.getChildren();
+				for(int j = 0; j < children.length; j++){
+					if(!ids.containsKey(children[j])){
+						ids.put(children[j], nodes.size());
+						nodes.add(children[j]);
+					}
+				}
+			}
+		}
+
+		out.writeInt(nodes.size());
+		for(int i = 0; i < nodes.size(); i++){
+			Tree node = nodes.get(i);
+			if(node.getAttribute() == null){
+				out.writeInt(-1);
+				out.writeDouble(node.getClassValue());
+			}else{
+				Tree[] children = node.getChildren();
+				if(children.length != numBranches(node.getAttribute())){
+					throw new IllegalArgumentException("Node on " + node.getAttribute().name() + " has " + children.length + " children");
+				}
+				out.writeInt(node.getAttribute().index());
+				if(node.getAttribute().isNumeric()){
+					out.writeDouble(node.getSplitPoint());
+				}
+				double[] probs = node.getProbs();
+				out.writeBoolean(probs != null);
+				for(int j = 0; probs != null && j < probs.length; j++){
+					out.writeDouble(probs[j]);
+				}
+				for(int j = 0; j < children.length; j++){
+					out.writeInt(ids.get(children[j]));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Read a node table written by writeTree
+	 * @param in input
+	 * @param header attribute space of the tree, its class attribute is set on every leaf
+	 * @return root of the tree
+	 * @throws IOException
+	 */
+	public static Tree readTree(DataInputStream in, Instances header) throws IOException {
+		int numNodes = in.readInt();
+		Tree[] nodes = new Tree[numNodes];
+		for(int i = 0; i < numNodes; i++){
+			nodes[i] = new Tree();
+		}
+
+		for(int i = 0; i < numNodes; i++){
+			Tree node = nodes[i];
+			int att = in.readInt();
+			if(att < 0){
+				node.setClassValue(in.readDouble());
+				node.setClassAttribute(header.classAttribute());
+			}else{
+				Attribute attribute = header.attribute(att);
+				node.setAttribute(attribute);
+				if(attribute.isNumeric()){
+					node.setSplitPoint(in.readDouble());
+				}
+				Tree[] children = new Tree[numBranches(attribute)];
+				if(in.readBoolean()){
+					double[] probs = new double[children.length];
+					for(int j = 0; j < probs.length; j++){
+						probs[j] = in.readDouble();
+					}
+					node.addProbs(probs);
+				}
+				for(int j = 0; j < children.length; j++){
+					int child = in.readInt();
+					if(child <= 0 || child >= numNodes){
+						throw new IOException("Node " + i + " has invalid child " + child);
+					}
+					children[j] = nodes[child];
+				}
+				node.addChildren(children);
+			}
+		}
+		return nodes[0];
+	}
+
+	/**
+	 * @return number of children of a node on the attribute, two for a numeric split
+	 */
+	private static int numBranches(Attribute att){
+		return att.isNumeric() ? 2 : att.numValues();
+	}
+}
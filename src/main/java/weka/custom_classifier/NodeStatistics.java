@@ -0,0 +1,127 @@
+package weka.custom_classifier;
+
+/**
+ * Class statistics of the rows reaching one node, computed once and shared by the entropy, split info,
+ * purity and majority class tests of the node
+ * The statistics of the children come from the counts of the split (contingency table or numeric split),
+ * so the class column is scanned only at the root
+ * With histogram threshold search they also carry the class histograms of the numeric attributes, see BinnedColumns
+ */
+public class NodeStatistics {
+	private int[] classCounts;
+	private int total; //number of rows, every row has weight 1 in ColumnarDataset
+	private double entropy;
+	private int[][] histograms; //class histogram per numeric attribute index, null if not counted
+
+	/**
+	 * @param classCounts number of rows per class, kept
+	 */
+	public NodeStatistics(int[] classCounts){
+		this.classCounts = classCounts;
+		total = 0;
+		for(int i = 0; i < classCounts.length; i++){
+			total += classCounts[i];
+		}
+		entropy = ContingencyTable.entropy(classCounts, total);
+	}
+
+	/**
+	 * Count the classes of some rows, one pass
+	 * @param data training data in columns
+	 * @param rows row indexes into data
+	 * @param from first index of the rows
+	 * @param to last index of the rows, exclusive
+	 * @return statistics of the rows
+	 */
+	public static NodeStatistics count(ColumnarDataset data, int[] rows, int from, int to){
+		int[] classCounts = new int[data.numClasses()];
+		data.countClasses(classCounts, rows, from, to);
+		return new NodeStatistics(classCounts);
+	}
+
+	/**
+	 * Statistics of the children of a nominal split, from the contingency table of the split attribute
+	 * @param table contingency table of the split attribute at the node
+	 * @param missingBranch child the rows with missing value go to
+	 * @return statistics per attribute value
+	 */
+	public static NodeStatistics[] children(ContingencyTable table, int missingBranch){
+		NodeStatistics[] children = new NodeStatistics[table.numValues()];
+		for(int i = 0; i < children.length; i++){
+			int[] counts = table.getValueCounts(i).clone();
+			if(i == missingBranch){
+				int[] missingCounts = table.getMissingCounts();
+				for(int j = 0; j < counts.length; j++){
+					counts[j] += missingCounts[j];
+				}
+			}
+			children[i] = new NodeStatistics(counts);
+		}
+		return children;
+	}
+
+	/**
+	 * Statistics of the children of a binary split
+	 * @param secondCounts number of rows per class going to the second child, the other rows go to the first
+	 * @return statistics of the two children
+	 */
+	public NodeStatistics[] binaryChildren(int[] secondCounts){
+		int[] firstCounts = new int[classCounts.length];
+		for(int i = 0; i < firstCounts.length; i++){
+			firstCounts[i] = classCounts[i] - secondCounts[i];
+		}
+		return new NodeStatistics[] {new NodeStatistics(firstCounts), new NodeStatistics(secondCounts.clone())};
+	}
+
+	public int[] getClassCounts(){
+		return classCounts;
+	}
+
+	public int getTotal(){
+		return total;
+	}
+
+	/**
+	 * @return class histogram per numeric attribute index, null if not counted
+	 */
+	public int[][] getHistograms(){
+		return histograms;
+	}
+
+	public void setHistograms(int[][] histograms){
+		this.histograms = histograms;
+	}
+
+	/**
+	 * @return entropy of the class distribution, also the split info of the node
+	 */
+	public double getEntropy(){
+		return entropy;
+	}
+
+	/**
+	 * @return true if the rows have at most one class
+	 */
+	public boolean isPure(){
+		int numClasses = 0;
+		for(int i = 0; i < classCounts.length; i++){
+			if(classCounts[i] > 0){
+				numClasses++;
+			}
+		}
+		return numClasses <= 1;
+	}
+
+	/**
+	 * @return most frequent class, first one on tie
+	 */
+	public int majorityClass(){
+		int maxIndex = 0;
+		for(int i = 1; i < classCounts.length; i++){
+			if(classCounts[i] > classCounts[maxIndex]){
+				maxIndex = i;
+			}
+		}
+		return maxIndex;
+	}
+}
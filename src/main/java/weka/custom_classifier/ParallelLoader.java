@@ -0,0 +1,478 @@
+package weka.custom_classifier;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import weka.core.Attribute;
+import weka.core.Instances;
+
+/**
+ * Multi-threaded loader of dense ARFF and CSV files into columns
+ * The data section is split into byte ranges at line boundaries, every range is memory mapped and parsed by its own task:
+ * a first pass counts the rows of every range, a second pass writes each range at its row offset.
+ * Nominal values are looked up in the header dictionary from their bytes, numeric values are parsed from their bytes
+ */
+public class ParallelLoader {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final int MAX_CHUNK = 1 << 30; //below the 2GB limit of a mapping
+	private static final int TASKS_PER_THREAD = 4;
+	private static final ScoringMetrics METRICS = ScoringMetrics.get();
+
+	private Instances header;
+	private int numThreads;
+
+	/**
+	 * @param numThreads number of parsing threads
+	 */
+	public ParallelLoader(int numThreads){
+		this.numThreads = numThreads;
+	}
+
+	/**
+	 * Load a dense ARFF file, the header is read by weka
+	 * @param file ARFF file
+	 * @param classIndex class attribute index, -1 for none
+	 * @return columns
+	 * @throws IOException
+	 */
+	public ColumnarDataset loadArff(File file, int classIndex) throws IOException {
+		long start = System.nanoTime();
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			long dataStart = arffHeader(raf);
+			header.setClassIndex(classIndex);
+			return recordLoad(start, load(raf.getChannel(), dataStart));
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Load a CSV file whose first line holds the attribute names
+	 * @param file CSV file
+	 * @param structure attributes of the columns in file order, with the nominal values and the class index
+	 * @return columns
+	 * @throws IOException
+	 */
+	public ColumnarDataset loadCsv(File file, Instances structure) throws IOException {
+		long start = System.nanoTime();
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			header = new Instances(structure, 0);
+			long dataStart = nextLine(raf.getChannel(), 0);
+			return recordLoad(start, load(raf.getChannel(), dataStart));
+		} finally {
+			raf.close();
+		}
+	}
+
+	private static ColumnarDataset recordLoad(long start, ColumnarDataset data){
+		if(METRICS.isEnabled()){
+			METRICS.recordLoad(System.nanoTime() - start, data.numRows());
+		}
+		return data;
+	}
+
+	/**
+	 * Read the ARFF header up to the @data line
+	 * @return file offset of the first data line
+	 */
+	private long arffHeader(RandomAccessFile raf) throws IOException {
+		FileChannel channel = raf.getChannel();
+		StringBuilder text = new StringBuilder();
+		long offset = 0;
+		while(offset < channel.size()){
+			long end = nextLine(channel, offset);
+			ByteBuffer line = ByteBuffer.allocate((int) (end - offset));
+			channel.read(line, offset);
+			String s = new String(line.array(), UTF8);
+			text.append(s);
+			offset = end;
+			if(s.trim().toLowerCase().startsWith("@data")){
+				header = new Instances(new StringReader(text.toString()));
+				return offset;
+			}
+		}
+		throw new IOException("No @data section");
+	}
+
+	/**
+	 * @return offset just after the end of the line holding offset, the file size if it is the last line
+	 */
+	private static long nextLine(FileChannel channel, long offset) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+		long size = channel.size();
+		while(offset < size){
+			buffer.clear();
+			int read = channel.read(buffer, offset);
+			for(int i = 0; i < read; i++){
+				if(buffer.get(i) == '\n'){
+					return offset + i + 1;
+				}
+			}
+			offset += read;
+		}
+		return size;
+	}
+
+	private ColumnarDataset load(FileChannel channel, long dataStart) throws IOException {
+		long size = channel.size() - dataStart;
+		int numChunks = (int) Math.max((long) numThreads * TASKS_PER_THREAD, size / MAX_CHUNK + 1);
+		long[] bounds = new long[numChunks + 1];
+		bounds[0] = dataStart;
+		for(int i = 1; i < numChunks; i++){
+			bounds[i] = Math.max(bounds[i - 1], nextLine(channel, dataStart + size * i / numChunks - 1));
+		}
+		bounds[numChunks] = channel.size();
+
+		final Chunk[] chunks = new Chunk[numChunks];
+		for(int i = 0; i < numChunks; i++){
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, bounds[i], bounds[i + 1] - bounds[i]);
+			chunks[i] = new Chunk(buffer);
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(numThreads);
+		try {
+			List<Callable<Integer>> counts = new ArrayList<Callable<Integer>>();
+			for(int i = 0; i < numChunks; i++){
+				final Chunk chunk = chunks[i];
+				counts.add(new Callable<Integer>(){
+					public Integer call(){
+						return chunk.countRows();
+					}
+				});
+			}
+			int numRows = 0;
+			List<Future<Integer>> results = pool.invokeAll(counts);
+			for(int i = 0; i < numChunks; i++){
+				chunks[i].firstRow = numRows;
+				numRows += results.get(i).get();
+			}
+
+			final ColumnarDataset data = new ColumnarDataset(header, numRows);
+			final Dictionary[] dictionaries = dictionaries(header);
+			List<Callable<Integer>> parses = new ArrayList<Callable<Integer>>();
+			for(int i = 0; i < numChunks; i++){
+				final Chunk chunk = chunks[i];
+				parses.add(new Callable<Integer>(){
+					public Integer call() throws IOException {
+						chunk.parse(data, dictionaries);
+						return 0;
+					}
+				});
+			}
+			for(Future<Integer> result : pool.invokeAll(parses)){
+				result.get();
+			}
+			return data;
+		} catch (InterruptedException ex) {
+			throw new IOException("Loading interrupted", ex);
+		} catch (ExecutionException ex) {
+			//rethrow the parse error of the task, fork/join wraps it
+			for(Throwable cause = ex.getCause(); cause != null; cause = cause.getCause()){
+				if(cause instanceof IOException){
+					throw new IOException(cause.getMessage(), cause);
+				}
+			}
+			throw new IOException(ex.getCause());
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private static Dictionary[] dictionaries(Instances header){
+		Dictionary[] dictionaries = new Dictionary[header.numAttributes()];
+		for(int i = 0; i < header.numAttributes(); i++){
+			Attribute att = header.attribute(i);
+			if(att.isNominal()){
+				dictionaries[i] = new Dictionary(att);
+			}else if(!att.isNumeric()){
+				throw new IllegalArgumentException("Attribute type not supported: " + att.name());
+			}
+		}
+		return dictionaries;
+	}
+
+	/**
+	 * Open addressing hash table from the UTF-8 bytes of the nominal values to their index
+	 */
+	private static class Dictionary {
+		private Attribute attribute;
+		private byte[][] keys;
+		private int[] slots; //value index + 1, 0 for empty slot
+		private int mask;
+
+		Dictionary(Attribute attribute){
+			this.attribute = attribute;
+			int capacity = Integer.highestOneBit(Math.max(attribute.numValues(), 1) * 2) * 2;
+			keys = new byte[attribute.numValues()][];
+			slots = new int[capacity];
+			mask = capacity - 1;
+			for(int i = 0; i < attribute.numValues(); i++){
+				keys[i] = attribute.value(i).getBytes(UTF8);
+				int slot = hash(keys[i], 0, keys[i].length) & mask;
+				while(slots[slot] != 0){
+					slot = (slot + 1) & mask;
+				}
+				slots[slot] = i + 1;
+			}
+		}
+
+		/**
+		 * @return value index, -1 if the value is not in the header
+		 */
+		int indexOf(byte[] bytes, int from, int to){
+			int slot = hash(bytes, from, to) & mask;
+			while(slots[slot] != 0){
+				byte[] key = keys[slots[slot] - 1];
+				if(equal(key, bytes, from, to)){
+					return slots[slot] - 1;
+				}
+				slot = (slot + 1) & mask;
+			}
+			return -1;
+		}
+
+		private static int hash(byte[] bytes, int from, int to){
+			int hash = 0x811C9DC5;
+			for(int i = from; i < to; i++){
+				hash = (hash ^ bytes[i]) * 0x01000193;
+			}
+			return hash ^ (hash >>> 16);
+		}
+
+		private static boolean equal(byte[] key, byte[] bytes, int from, int to){
+			if(key.length != to - from){
+				return false;
+			}
+			for(int i = 0; i < key.length; i++){
+				if(key[i] != bytes[from + i]){
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * One line aligned byte range of the data section
+	 */
+	private static class Chunk {
+		private MappedByteBuffer buffer;
+		private int firstRow;
+		private byte[] token = new byte[64];
+
+		Chunk(MappedByteBuffer buffer){
+			this.buffer = buffer;
+		}
+
+		/**
+		 * @return number of data lines, skipping empty and comment lines
+		 */
+		int countRows(){
+			int numRows = 0;
+			int pos = 0;
+			int limit = buffer.limit();
+			while(pos < limit){
+				int end = lineEnd(pos);
+				if(isDataLine(pos, end)){
+					numRows++;
+				}
+				pos = end + 1;
+			}
+			return numRows;
+		}
+
+		void parse(ColumnarDataset data, Dictionary[] dictionaries) throws IOException {
+			int row = firstRow;
+			int pos = 0;
+			int limit = buffer.limit();
+			int numAttributes = dictionaries.length;
+			while(pos < limit){
+				int end = lineEnd(pos);
+				if(isDataLine(pos, end)){
+					int p = pos;
+					while(isBlank(buffer.get(p))){
+						p++;
+					}
+					if(buffer.get(p) == '{'){
+						throw new IOException("Sparse ARFF not supported");
+					}
+					for(int att = 0; att < numAttributes; att++){
+						if(p > end){
+							throw new IOException("Row " + row + ": " + numAttributes + " values expected");
+						}
+						p = parseValue(data, dictionaries[att], att, row, p, end);
+					}
+					while(p < end && isBlank(buffer.get(p))){
+						p++;
+					}
+					if(p < end){ //more values than attributes, misaligned row
+						throw new IOException("Row " + row + ": " + numAttributes + " values expected");
+					}
+					row++;
+				}
+				pos = end + 1;
+			}
+		}
+
+		/**
+		 * Parse one value and store it
+		 * @return position after the separator following the value
+		 */
+		private int parseValue(ColumnarDataset data, Dictionary dictionary, int att, int row, int p, int end) throws IOException {
+			while(p < end && isBlank(buffer.get(p))){
+				p++;
+			}
+			int length = 0;
+			byte quote = p < end ? buffer.get(p) : 0;
+			boolean quoted = quote == '\'' || quote == '"';
+			if(quoted){
+				p++;
+				while(p < end && buffer.get(p) != quote){
+					byte b = buffer.get(p++);
+					if(b == '\\' && p < end){
+						b = unescape(buffer.get(p++));
+					}
+					length = append(length, b);
+				}
+				p++;
+				while(p < end && buffer.get(p) != ','){
+					p++;
+				}
+			}else{
+				while(p < end && buffer.get(p) != ','){
+					length = append(length, buffer.get(p++));
+				}
+				while(length > 0 && isBlank(token[length - 1])){
+					length--;
+				}
+			}
+
+			if(!quoted && length == 1 && token[0] == '?'){
+				data.setValue(att, row, Double.NaN);
+			}else if(dictionary != null){
+				int index = dictionary.indexOf(token, 0, length);
+				if(index < 0){
+					throw new IOException("Row " + row + ": value " + new String(token, 0, length, UTF8) + " not declared for attribute " + dictionary.attribute.name());
+				}
+				data.setValue(att, row, index);
+			}else{
+				data.setValue(att, row, parseDouble(row, length));
+			}
+			return p + 1;
+		}
+
+		private int append(int length, byte b){
+			if(length == token.length){
+				byte[] grown = new byte[token.length * 2];
+				System.arraycopy(token, 0, grown, 0, length);
+				token = grown;
+			}
+			token[length] = b;
+			return length + 1;
+		}
+
+		/**
+		 * Parse a decimal number of the token, exact for up to 15 significant digits
+		 * and powers of ten up to 22, through Double.parseDouble otherwise
+		 */
+		private double parseDouble(int row, int length) throws IOException {
+			int i = 0;
+			boolean negative = false;
+			if(i < length && (token[i] == '-' || token[i] == '+')){
+				negative = token[i] == '-';
+				i++;
+			}
+			long mantissa = 0;
+			int digits = 0;
+			int exponent = 0;
+			boolean any = false;
+			while(i < length && token[i] >= '0' && token[i] <= '9'){
+				if(mantissa != 0 || token[i] != '0'){
+					digits++;
+				}
+				mantissa = mantissa * 10 + (token[i++] - '0');
+				any = true;
+			}
+			if(i < length && token[i] == '.'){
+				i++;
+				while(i < length && token[i] >= '0' && token[i] <= '9'){
+					if(mantissa != 0 || token[i] != '0'){
+						digits++;
+					}
+					mantissa = mantissa * 10 + (token[i++] - '0');
+					exponent--;
+					any = true;
+				}
+			}
+			if(i < length && (token[i] == 'e' || token[i] == 'E') && any){
+				int e = 0;
+				boolean negativeExponent = false;
+				i++;
+				if(i < length && (token[i] == '-' || token[i] == '+')){
+					negativeExponent = token[i] == '-';
+					i++;
+				}
+				while(i < length && token[i] >= '0' && token[i] <= '9' && e < 10000){
+					e = e * 10 + (token[i++] - '0');
+				}
+				exponent += negativeExponent ? -e : e;
+			}
+			if(!any || i != length || digits > 15 || exponent < -22 || exponent > 22){
+				try {
+					return Double.parseDouble(new String(token, 0, length, UTF8));
+				} catch (NumberFormatException ex) {
+					throw new IOException("Row " + row + ": number expected, read " + new String(token, 0, length, UTF8));
+				}
+			}
+			double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+			return negative ? -value : value;
+		}
+
+		private int lineEnd(int pos){
+			int limit = buffer.limit();
+			while(pos < limit && buffer.get(pos) != '\n'){
+				pos++;
+			}
+			return pos;
+		}
+
+		private boolean isDataLine(int pos, int end){
+			while(pos < end && (isBlank(buffer.get(pos)) || buffer.get(pos) == '\r')){
+				pos++;
+			}
+			return pos < end && buffer.get(pos) != '%';
+		}
+
+		private static boolean isBlank(byte b){
+			return b == ' ' || b == '\t' || b == '\r';
+		}
+
+		private static byte unescape(byte b){
+			switch(b){
+			case 'n': return '\n';
+			case 't': return '\t';
+			case 'r': return '\r';
+			default: return b;
+			}
+		}
+	}
+
+	private static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+		1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+}
@@ -0,0 +1,197 @@
+package weka.custom_classifier;
+
+/**
+ * Row indexes of every numeric attribute sorted once by value, for exact threshold search
+ * Sorted arrays are laid out like the node rows: the rows of a node occupy the same slice [from..to) in every array,
+ * ascending by value with missing values last, and partitioning a node keeps every child slice sorted
+ */
+public class PresortedColumns {
+
+	/**
+	 * Best binary split of one numeric attribute at one node
+	 */
+	public static class Split {
+		/** information gain, 0 if the rows can not be split */
+		public double gain;
+		/** rows with value less or equal go to child 0, greater to child 1 */
+		public double splitPoint = Double.NaN;
+		/** number of rows with missing value */
+		public int numMissing;
+		/** number of rows per class going to child 1, rows with missing value go to child 0 */
+		public int[] aboveCounts;
+	}
+
+	private ColumnarDataset data;
+	private int[][] sorted; //sorted[att], null for nominal attribute
+	private int[] branch; //branch of every row of the node being partitioned
+	private int[] buffer;
+
+	/**
+	 * Sort every numeric attribute
+	 * @param data training data in columns
+	 * @param rows row indexes into data, the root slice
+	 */
+	public PresortedColumns(ColumnarDataset data, int[] rows){
+		this.data = data;
+		sorted = new int[data.numAttributes()][];
+		branch = new int[data.numRows()];
+		buffer = new int[rows.length];
+
+		for(int att = 0; att < data.numAttributes(); att++){
+			double[] column = data.numericColumn(att);
+			if(att != data.classIndex() && column != null){
+				sorted[att] = rows.clone();
+				sort(sorted[att], buffer, column, 0, rows.length);
+			}
+		}
+	}
+
+	/**
+	 * Find the best threshold with one sweep over running class counts of the sorted rows
+	 * The split point is the largest value of the lower side, as in C4.5
+	 * @param att numeric attribute index
+	 * @param from first index of the node rows
+	 * @param to last index of the node rows, exclusive
+	 * @param entropy entropy of the node
+	 * @param numInstances number of rows of the node
+	 * @return best split
+	 */
+	public Split bestSplit(int att, int from, int to, double entropy, int numInstances){
+		int[] order = sorted[att];
+		double[] column = data.numericColumn(att);
+		int numClasses = data.numClasses();
+		int[] below = new int[numClasses];
+		int[] above = new int[numClasses];
+
+		int numKnown = 0;
+		while(from + numKnown < to && !Double.isNaN(column[order[from + numKnown]])){
+			above[data.classValue(order[from + numKnown])]++;
+			numKnown++;
+		}
+
+		Split split = new Split();
+		split.numMissing = to - from - numKnown;
+		split.aboveCounts = new int[numClasses];
+		for(int i = from; i < from + numKnown - 1; i++){
+			int classValue = data.classValue(order[i]);
+			below[classValue]++;
+			above[classValue]--;
+
+			double value = column[order[i]];
+			if(value < column[order[i + 1]]){
+				int numBelow = i - from + 1;
+				int numAbove = numKnown - numBelow;
+				double gain = entropy
+						- (double) numBelow / (double) numInstances * ContingencyTable.entropy(below, numBelow)
+						- (double) numAbove / (double) numInstances * ContingencyTable.entropy(above, numAbove);
+				if(gain > split.gain){
+					split.gain = gain;
+					split.splitPoint = value;
+					System.arraycopy(above, 0, split.aboveCounts, 0, numClasses);
+				}
+			}
+		}
+
+		return split;
+	}
+
+	/**
+	 * Partition the node rows and every sorted slice by a numeric split point
+	 * Row with missing value goes to the first child
+	 * @param rows row indexes into data
+	 * @param from first index of the node rows
+	 * @param to last index of the node rows, exclusive
+	 * @param att numeric attribute index
+	 * @param splitPoint rows with value less or equal go to child 0, greater to child 1
+	 * @return bounds, child i holds [bounds[i]..bounds[i+1])
+	 */
+	public int[] partition(int[] rows, int from, int to, int att, double splitPoint){
+		double[] column = data.numericColumn(att);
+		for(int i = from; i < to; i++){
+			int row = rows[i];
+			branch[row] = !Double.isNaN(column[row]) && Double.compare(column[row], splitPoint) > 0 ? 1 : 0;
+		}
+		return partitionAll(rows, from, to, 2);
+	}
+
+	/**
+	 * Partition the node rows and every sorted slice by nominal attribute value
+	 * Row with missing value goes to the first value, as RowPartition does
+	 * @param rows row indexes into data
+	 * @param from first index of the node rows
+	 * @param to last index of the node rows, exclusive
+	 * @param att nominal attribute index
+	 * @return bounds, child i holds [bounds[i]..bounds[i+1])
+	 */
+	public int[] partition(int[] rows, int from, int to, int att){
+		for(int i = from; i < to; i++){
+			int row = rows[i];
+			branch[row] = Math.max(data.nominalValue(att, row), 0);
+		}
+		return partitionAll(rows, from, to, data.attribute(att).numValues());
+	}
+
+	private int[] partitionAll(int[] rows, int from, int to, int numBranches){
+		int[] bounds = new int[numBranches + 1];
+		for(int i = from; i < to; i++){
+			bounds[branch[rows[i]] + 1]++;
+		}
+		bounds[0] = from;
+		for(int i = 1; i <= numBranches; i++){
+			bounds[i] += bounds[i - 1];
+		}
+
+		stablePartition(rows, from, to, bounds);
+		for(int att = 0; att < sorted.length; att++){
+			if(sorted[att] != null){
+				stablePartition(sorted[att], from, to, bounds);
+			}
+		}
+		return bounds;
+	}
+
+	/**
+	 * Move rows into their branch slice keeping their order, through the buffer slice [from..to)
+	 * Concurrent nodes own disjoint slices, so they never share buffer cells
+	 */
+	private void stablePartition(int[] array, int from, int to, int[] bounds){
+		int[] next = new int[bounds.length - 1];
+		System.arraycopy(bounds, 0, next, 0, next.length);
+		for(int i = from; i < to; i++){
+			int row = array[i];
+			buffer[next[branch[row]]++] = row;
+		}
+		System.arraycopy(buffer, from, array, from, to - from);
+	}
+
+	/**
+	 * Stable merge sort of row indexes by column value, missing values last
+	 */
+	private static void sort(int[] array, int[] buffer, double[] column, int from, int to){
+		if(to - from < 2){
+			return;
+		}
+		int mid = (from + to) >>> 1;
+		sort(array, buffer, column, from, mid);
+		sort(array, buffer, column, mid, to);
+
+		int i = from;
+		int j = mid;
+		int k = from;
+		while(i < mid && j < to){
+			//Double.compare orders NaN after every value
+			if(Double.compare(column[array[j]], column[array[i]]) < 0){
+				buffer[k++] = array[j++];
+			}else{
+				buffer[k++] = array[i++];
+			}
+		}
+		while(i < mid){
+			buffer[k++] = array[i++];
+		}
+		while(j < to){
+			buffer[k++] = array[j++];
+		}
+		System.arraycopy(buffer, from, array, from, to - from);
+	}
+}
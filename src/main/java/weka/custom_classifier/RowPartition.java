@@ -0,0 +1,114 @@
+package weka.custom_classifier;
+
+/**
+ * In-place partitioning of a slice of row indexes into one shared dataset
+ * Replaces copying the instances of every child into a new Instances
+ */
+public class RowPartition {
+
+	private RowPartition(){}
+
+	/**
+	 * Create row indexes 0..n-1
+	 * @param numRows number of rows
+	 * @return row indexes
+	 */
+	public static int[] identity(int numRows){
+		int[] rows = new int[numRows];
+		for(int i = 0; i < numRows; i++){
+			rows[i] = i;
+		}
+		return rows;
+	}
+
+	/**
+	 * Partition rows[from..to) by nominal attribute value, quicksort-style swapping in place
+	 * Row with missing value goes to the first value, as (int) of a missing value is 0
+	 * @param data shared training store
+	 * @param rows row indexes into data
+	 * @param from first index of the slice
+	 * @param to last index of the slice, exclusive
+	 * @param att nominal attribute index
+	 * @return bounds, child i holds rows[bounds[i]..bounds[i+1])
+	 */
+	public static int[] partition(ColumnarDataset data, int[] rows, int from, int to, int att){
+		return partition(data, rows, from, to, att, 0);
+	}
+
+	/**
+	 * Partition rows[from..to) by nominal attribute value, quicksort-style swapping in place
+	 * @param data shared training store
+	 * @param rows row indexes into data
+	 * @param from first index of the slice
+	 * @param to last index of the slice, exclusive
+	 * @param att nominal attribute index
+	 * @param missingValue value the rows with missing value go to
+	 * @return bounds, child i holds rows[bounds[i]..bounds[i+1])
+	 */
+	public static int[] partition(ColumnarDataset data, int[] rows, int from, int to, int att, int missingValue){
+		int numValues = data.attribute(att).numValues();
+		int[] bounds = new int[numValues + 1];
+
+		for(int i = from; i < to; i++){
+			bounds[valueOf(data, att, rows[i], missingValue) + 1]++;
+		}
+		bounds[0] = from;
+		for(int i = 1; i <= numValues; i++){
+			bounds[i] += bounds[i - 1];
+		}
+
+		//next free position of every value, swap rows into place until each value is full
+		int[] next = new int[numValues];
+		System.arraycopy(bounds, 0, next, 0, numValues);
+		for(int value = 0; value < numValues; value++){
+			while(next[value] < bounds[value + 1]){
+				int row = rows[next[value]];
+				int target = valueOf(data, att, row, missingValue);
+				if(target == value){
+					next[value]++;
+				}else{
+					rows[next[value]] = rows[next[target]];
+					rows[next[target]] = row;
+					next[target]++;
+				}
+			}
+		}
+
+		return bounds;
+	}
+
+	/**
+	 * Partition rows[from..to) by numeric split point, swapping in place
+	 * @param data shared training store
+	 * @param rows row indexes into data
+	 * @param from first index of the slice
+	 * @param to last index of the slice, exclusive
+	 * @param att numeric attribute index
+	 * @param splitPoint rows with value less or equal go to child 0, greater to child 1
+	 * @param missingValue child the rows with missing value go to
+	 * @return bounds, child i holds rows[bounds[i]..bounds[i+1])
+	 */
+	public static int[] partition(ColumnarDataset data, int[] rows, int from, int to, int att, double splitPoint, int missingValue){
+		double[] column = data.numericColumn(att);
+		int lo = from;
+		int hi = to;
+		while(lo < hi){
+			double value = column[rows[lo]];
+			int target = Double.isNaN(value) ? missingValue : (Double.compare(value, splitPoint) > 0 ? 1 : 0);
+			if(target == 0){
+				lo++;
+			}else{
+				hi--;
+				int row = rows[lo];
+				rows[lo] = rows[hi];
+				rows[hi] = row;
+			}
+		}
+		return new int[] {from, lo, to};
+	}
+
+	private static int valueOf(ColumnarDataset data, int att, int row, int missingValue){
+		int value = data.nominalValue(att, row);
+		return value < 0 ? missingValue : value;
+	}
+}
@@ -0,0 +1,145 @@
+package weka.custom_classifier;
+
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Optional latency histograms of scoring and loading, shared by the whole JVM
+ * Disabled by default (enable with setEnabled or -Dweka.custom_classifier.scoringMetrics=true),
+ * a disabled scoring path only reads one volatile flag
+ * Scoring is measured in CompiledTree, so it covers every classification of CustomJ48 and CustomId3,
+ * loading in ParallelLoader and ColumnarFile
+ */
+public class ScoringMetrics {
+	private static final ScoringMetrics INSTANCE = new ScoringMetrics();
+
+	private volatile boolean enabled;
+	private LatencyHistogram instanceLatency; //nanoseconds per classified instance
+	private LatencyHistogram batchLatency; //nanoseconds per batch
+	private LatencyHistogram depth; //nodes tested per prediction
+	private LatencyHistogram loadLatency; //nanoseconds per loaded file
+	private AtomicLong scoredRows;
+	private AtomicLong scoringNanos;
+	private AtomicLong loadedRows;
+	private AtomicLong loadingNanos;
+
+	private ScoringMetrics(){
+		enabled = Boolean.getBoolean("weka.custom_classifier.scoringMetrics");
+		instanceLatency = new LatencyHistogram();
+		batchLatency = new LatencyHistogram();
+		depth = new LatencyHistogram();
+		loadLatency = new LatencyHistogram();
+		scoredRows = new AtomicLong();
+		scoringNanos = new AtomicLong();
+		loadedRows = new AtomicLong();
+		loadingNanos = new AtomicLong();
+	}
+
+	public static ScoringMetrics get(){
+		return INSTANCE;
+	}
+
+	public boolean isEnabled(){
+		return enabled;
+	}
+
+	public void setEnabled(boolean enabled){
+		this.enabled = enabled;
+	}
+
+	/**
+	 * @param nanos time to classify one instance
+	 * @param nodeDepth depth of the leaf reached
+	 */
+	public void recordInstance(long nanos, int nodeDepth){
+		instanceLatency.record(nanos);
+		depth.record(nodeDepth);
+		scoredRows.incrementAndGet();
+		scoringNanos.addAndGet(nanos);
+	}
+
+	/**
+	 * @param nanos time to classify the batch
+	 * @param numRows rows of the batch
+	 */
+	public void recordBatch(long nanos, int numRows){
+		batchLatency.record(nanos);
+		scoredRows.addAndGet(numRows);
+		scoringNanos.addAndGet(nanos);
+	}
+
+	/**
+	 * @param nodeDepth depth of the leaf reached by predictions of a batch
+	 * @param times number of predictions reaching that depth
+	 */
+	public void recordDepth(int nodeDepth, long times){
+		depth.record(nodeDepth, times);
+	}
+
+	/**
+	 * @param nanos time to load the file
+	 * @param numRows rows loaded
+	 */
+	public void recordLoad(long nanos, int numRows){
+		loadLatency.record(nanos);
+		loadedRows.addAndGet(numRows);
+		loadingNanos.addAndGet(nanos);
+	}
+
+	public LatencyHistogram getInstanceLatency(){
+		return instanceLatency;
+	}
+
+	public LatencyHistogram getBatchLatency(){
+		return batchLatency;
+	}
+
+	public LatencyHistogram getDepth(){
+		return depth;
+	}
+
+	public LatencyHistogram getLoadLatency(){
+		return loadLatency;
+	}
+
+	/**
+	 * @return rows classified per second of scoring time, single instances and batches together
+	 */
+	public double scoringRowsPerSecond(){
+		long nanos = scoringNanos.get();
+		return nanos == 0 ? 0.0 : scoredRows.get() * 1e9 / nanos;
+	}
+
+	/**
+	 * @return rows loaded per second of loading time
+	 */
+	public double loadingRowsPerSecond(){
+		long nanos = loadingNanos.get();
+		return nanos == 0 ? 0.0 : loadedRows.get() * 1e9 / nanos;
+	}
+
+	public void reset(){
+		instanceLatency.reset();
+		batchLatency.reset();
+		depth.reset();
+		loadLatency.reset();
+		scoredRows.set(0);
+		scoringNanos.set(0);
+		loadedRows.set(0);
+		loadingNanos.set(0);
+	}
+
+	/**
+	 * Print every histogram, latencies in microseconds
+	 * @param out output
+	 */
+	public void dump(PrintStream out){
+		out.println("Scoring metrics");
+		out.println("instance latency (us): " + instanceLatency.toString(1000.0));
+		out.println("batch latency (us):    " + batchLatency.toString(1000.0));
+		out.println("depth:                 " + depth);
+		out.println(String.format("scoring: %d rows, %.0f rows/s", scoredRows.get(), scoringRowsPerSecond()));
+		out.println("load latency (us):     " + loadLatency.toString(1000.0));
+		out.println(String.format("loading: %d rows, %.0f rows/s", loadedRows.get(), loadingRowsPerSecond()));
+	}
+}
@@ -0,0 +1,422 @@
+package weka.custom_classifier;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+
+import weka.core.Attribute;
+import weka.core.FastVector;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+import weka.core.converters.ArffLoader;
+
+/**
+ * Synthetic dataset of any size following the attributes of an ARFF header
+ * Every value is a hash of (seed, row, attribute), so rows are generated in any order without being held in memory:
+ * ARFF is written row by row, the columnar file column by column
+ * Nominal values and numeric values in [0, 100) are uniform, the class follows a planted random tree
+ * (or the class distribution alone with tree depth 0), with label noise
+ */
+public class SyntheticDataset implements ColumnarFile.ColumnSource {
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+	private Instances source; //attributes the dataset follows, class index set
+	private int numRows;
+	private int numAttributes; //number of non class attributes, 0 for the attributes of source
+	private int cardinality; //number of values of every nominal attribute, 0 for the values of source
+	private double missingRate;
+	private double classSkew; //class i has probability proportional to 1/(i+1)^classSkew
+	private int treeDepth;
+	private double labelNoise; //probability the class is drawn from the class distribution instead of the planted tree
+	private long seed;
+
+	private Instances header; //generated attributes, null until prepared
+	private double[] classDistribution; //cumulative
+	private CompiledTree plantedTree; //null for depth 0
+	private int[] treeAttributes; //attributes tested by the planted tree
+	private double[] treeRow; //values of the tree attributes of one row
+
+	/**
+	 * @param source attributes the dataset follows, nominal and numeric, nominal class index set
+	 */
+	public SyntheticDataset(Instances source)
+	{
+		if(source.classIndex() < 0 || !source.classAttribute().isNominal()){
+			throw new IllegalArgumentException("Class attribute must be nominal");
+		}
+		this.source = new Instances(source, 0);
+		numRows = 1000;
+		numAttributes = 0;
+		cardinality = 0;
+		missingRate = 0.0;
+		classSkew = 0.0;
+		treeDepth = 4;
+		labelNoise = 0.05;
+		seed = 1;
+	}
+
+	/**
+	 * @param numRows number of rows, default 1000
+	 * @param numAttributes number of non class attributes, the attributes of the header repeated or cut, 0 (default) for the attributes of the header
+	 * @param cardinality number of values of every nominal attribute except the class, 0 (default) for the values of the header
+	 */
+	public void setSize(int numRows, int numAttributes, int cardinality)
+	{
+		this.numRows = numRows;
+		this.numAttributes = numAttributes;
+		this.cardinality = cardinality;
+		header = null;
+	}
+
+	/**
+	 * @param missingRate probability of a missing value for every non class value, default 0
+	 * @param classSkew class i has probability proportional to 1/(i+1)^classSkew, default 0 (uniform)
+	 */
+	public void setDistribution(double missingRate, double classSkew)
+	{
+		this.missingRate = missingRate;
+		this.classSkew = classSkew;
+		header = null;
+	}
+
+	/**
+	 * @param treeDepth depth of the planted tree labelling the rows, 0 for a class independent of the attributes, default 4
+	 * @param labelNoise probability the class is drawn from the class distribution instead of the planted tree, default 0.05
+	 */
+	public void setPlantedTree(int treeDepth, double labelNoise)
+	{
+		this.treeDepth = treeDepth;
+		this.labelNoise = labelNoise;
+		header = null;
+	}
+
+	/**
+	 * @param seed seed of the values and of the planted tree, default 1
+	 */
+	public void setSeed(long seed)
+	{
+		this.seed = seed;
+		header = null;
+	}
+
+	/**
+	 * @return attributes of the generated dataset, class last
+	 */
+	public Instances header()
+	{
+		if(header == null){
+			prepare();
+		}
+		return header;
+	}
+
+	public int numRows()
+	{
+		return numRows;
+	}
+
+	/**
+	 * @param att attribute index
+	 * @param row row index
+	 * @return value of the attribute in the row, as weka Instance value
+	 */
+	public double value(int att, int row)
+	{
+		Instances header = header();
+		if(att == header.classIndex()){
+			return classValue(row);
+		}
+		if(missingRate > 0.0 && unit(hash(att, row, 0)) < missingRate){
+			return Instance.missingValue();
+		}
+		return attributeValue(att, row);
+	}
+
+	/**
+	 * @return value of the attribute before missing values are drawn
+	 */
+	private double attributeValue(int att, int row)
+	{
+		double u = unit(hash(att, row, 1));
+		Attribute attribute = header.attribute(att);
+		if(attribute.isNominal()){
+			return (int) (u * attribute.numValues());
+		}
+		return Math.floor(u * 100000.0) / 1000.0;
+	}
+
+	private double classValue(int row)
+	{
+		int classIndex = header.classIndex();
+		if(plantedTree == null || unit(hash(classIndex, row, 2)) < labelNoise){
+			return drawClass(unit(hash(classIndex, row, 3)));
+		}
+		//the tree sees the values before missing values are drawn
+		for(int i = 0; i < treeAttributes.length; i++){
+			treeRow[treeAttributes[i]] = attributeValue(treeAttributes[i], row);
+		}
+		return plantedTree.classify(treeRow);
+	}
+
+	private int drawClass(double u)
+	{
+		int classValue = 0;
+		while(classValue < classDistribution.length - 1 && u >= classDistribution[classValue]){
+			classValue++;
+		}
+		return classValue;
+	}
+
+	/**
+	 * Counter based random bits: SplitMix64 finalizer of the position of the value
+	 * @param stream 0 missing, 1 value, 2 label noise, 3 class drawn from the class distribution
+	 */
+	private long hash(int att, int row, int stream)
+	{
+		long z = seed + GOLDEN_GAMMA * ((((long) row * header.numAttributes() + att) << 2) + stream + 1);
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * @return uniform double in [0, 1)
+	 */
+	private static double unit(long bits)
+	{
+		return (bits >>> 11) * 0x1.0p-53;
+	}
+
+	/**
+	 * Build the attributes, the class distribution and the planted tree
+	 */
+	private void prepare()
+	{
+		ArrayList<Attribute> attributes = new ArrayList<Attribute>();
+		for(int i = 0; i < source.numAttributes(); i++){
+			if(i != source.classIndex()){
+				if(!source.attribute(i).isNominal() && !source.attribute(i).isNumeric()){
+					throw new IllegalArgumentException("Attribute type not supported: " + source.attribute(i).name());
+				}
+				attributes.add(source.attribute(i));
+			}
+		}
+		if(attributes.isEmpty()){
+			throw new IllegalArgumentException("Header has no attribute besides the class");
+		}
+
+		int len = numAttributes > 0 ? numAttributes : attributes.size();
+		FastVector vector = new FastVector(len + 1);
+		for(int i = 0; i < len; i++){
+			Attribute att = attributes.get(i % attributes.size());
+			String name = i < attributes.size() ? att.name() : att.name() + "_" + (i / attributes.size());
+			if(att.isNumeric()){
+				vector.addElement(new Attribute(name));
+			}else{
+				int numValues = cardinality > 0 ? cardinality : att.numValues();
+				FastVector values = new FastVector(numValues);
+				for(int j = 0; j < numValues; j++){
+					values.addElement(cardinality > 0 ? "v" + j : att.value(j));
+				}
+				vector.addElement(new Attribute(name, values));
+			}
+		}
+		vector.addElement(source.classAttribute().copy());
+		header = new Instances(source.relationName() + "-synthetic", vector, 0);
+		header.setClassIndex(len);
+
+		classDistribution = new double[header.numClasses()];
+		double sum = 0.0;
+		for(int i = 0; i < classDistribution.length; i++){
+			sum += 1.0 / Math.pow(i + 1, classSkew);
+			classDistribution[i] = sum;
+		}
+		for(int i = 0; i < classDistribution.length; i++){
+			classDistribution[i] /= sum;
+		}
+
+		plantedTree = null;
+		treeAttributes = new int[0];
+		if(treeDepth > 0){
+			Random random = new Random(seed);
+			ArrayList<Integer> used = new ArrayList<Integer>();
+			Tree root = plant(random, treeDepth, new ArrayList<Attribute>(), used);
+			plantedTree = CompiledTree.compile(root);
+			treeAttributes = new int[used.size()];
+			for(int i = 0; i < treeAttributes.length; i++){
+				treeAttributes[i] = used.get(i);
+			}
+		}
+		treeRow = new double[header.numAttributes()];
+	}
+
+	/**
+	 * Grow a random tree, a nominal attribute is tested once on a path, a numeric attribute with any split point in [0, 100)
+	 * @param depth remaining depth
+	 * @param selectedAttr nominal attributes tested on the path, not modified
+	 * @param used filled with the attributes tested by the tree
+	 * @return node
+	 */
+	private Tree plant(Random random, int depth, ArrayList<Attribute> selectedAttr, ArrayList<Integer> used)
+	{
+		Tree tree = new Tree();
+		tree.setClassAttribute(header.classAttribute());
+		ArrayList<Attribute> candidates = new ArrayList<Attribute>();
+		for(int i = 0; i < header.numAttributes(); i++){
+			if(i != header.classIndex() && !selectedAttr.contains(header.attribute(i))){
+				candidates.add(header.attribute(i));
+			}
+		}
+		if(depth == 0 || candidates.isEmpty()){
+			tree.setClassValue(drawClass(random.nextDouble()));
+			return tree;
+		}
+
+		Attribute att = candidates.get(random.nextInt(candidates.size()));
+		if(!used.contains(att.index())){
+			used.add(att.index());
+		}
+		ArrayList<Attribute> childSelectedAttr = new ArrayList<Attribute>(selectedAttr);
+		Tree[] children;
+		if(att.isNumeric()){
+			tree.setSplitPoint(Math.floor(random.nextDouble() * 100000.0) / 1000.0);
+			children = new Tree[2];
+		}else{
+			childSelectedAttr.add(att);
+			children = new Tree[att.numValues()];
+		}
+		for(int i = 0; i < children.length; i++){
+			children[i] = plant(random, depth - 1, childSelectedAttr, used);
+		}
+		tree.setAttribute(att);
+		tree.addChildren(children);
+		return tree;
+	}
+
+	/**
+	 * Generate the dataset in memory
+	 * @return instances, class index set
+	 */
+	public Instances toInstances()
+	{
+		Instances header = header();
+		Instances data = new Instances(header, numRows);
+		for(int i = 0; i < numRows; i++){
+			double[] values = new double[header.numAttributes()];
+			for(int j = 0; j < values.length; j++){
+				values[j] = value(j, i);
+			}
+			data.add(new Instance(1.0, values));
+		}
+		return data;
+	}
+
+	/**
+	 * Write the dataset as ARFF, one row at a time
+	 * @param file output file
+	 * @throws IOException
+	 */
+	public void writeArff(File file) throws IOException
+	{
+		Instances header = header();
+		String[][] labels = new String[header.numAttributes()][];
+		for(int i = 0; i < labels.length; i++){
+			Attribute att = header.attribute(i);
+			if(att.isNominal()){
+				labels[i] = new String[att.numValues()];
+				for(int j = 0; j < att.numValues(); j++){
+					labels[i][j] = Utils.quote(att.value(j));
+				}
+			}
+		}
+
+		BufferedWriter out = new BufferedWriter(new FileWriter(file), 1 << 16);
+		try {
+			out.write(header.toString()); //ends with @data
+			StringBuilder line = new StringBuilder();
+			for(int i = 0; i < numRows; i++){
+				line.setLength(0);
+				for(int j = 0; j < labels.length; j++){
+					if(j > 0){
+						line.append(',');
+					}
+					double value = value(j, i);
+					if(Instance.isMissingValue(value)){
+						line.append('?');
+					}else if(labels[j] != null){
+						line.append(labels[j][(int) value]);
+					}else{
+						line.append(value);
+					}
+				}
+				line.append('\n');
+				out.write(line.toString());
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Write the dataset as a columnar file, one column at a time
+	 * @param file output file
+	 * @throws IOException
+	 */
+	public void writeColumnar(File file) throws IOException
+	{
+		ColumnarFile.write(header(), numRows, this, file);
+	}
+
+	/**
+	 * Generate a dataset from the header of an ARFF file
+	 * @param args header ARFF, output file (.arff for ARFF, columnar file otherwise), options:
+	 * -N rows, -A attributes, -V nominal cardinality, -M missing rate, -S class skew, -D tree depth, -E label noise, -R seed, -C class index (1 based, default last)
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception
+	{
+		if(args.length < 2){
+			System.out.println("Usage: SyntheticDataset <header arff> <output arff/columnar file> [-N rows] [-A attributes] [-V cardinality]"
+					+ " [-M missing rate] [-S class skew] [-D tree depth] [-E label noise] [-R seed] [-C class index]");
+			return;
+		}
+		ArffLoader loader = new ArffLoader();
+		loader.setSource(new File(args[0]));
+		Instances structure = loader.getStructure();
+		String output = args[1];
+		String[] options = new String[args.length - 2];
+		System.arraycopy(args, 2, options, 0, options.length);
+
+		String classIndex = Utils.getOption('C', options);
+		structure.setClassIndex(classIndex.length() > 0 ? Integer.parseInt(classIndex) - 1 : structure.numAttributes() - 1);
+
+		SyntheticDataset dataset = new SyntheticDataset(structure);
+		dataset.setSize(intOption('N', options, 1000), intOption('A', options, 0), intOption('V', options, 0));
+		dataset.setDistribution(doubleOption('M', options, 0.0), doubleOption('S', options, 0.0));
+		dataset.setPlantedTree(intOption('D', options, 4), doubleOption('E', options, 0.05));
+		dataset.setSeed(intOption('R', options, 1));
+		Utils.checkForRemainingOptions(options);
+
+		if(output.endsWith(".arff")){
+			dataset.writeArff(new File(output));
+		}else{
+			dataset.writeColumnar(new File(output));
+		}
+	}
+
+	private static int intOption(char flag, String[] options, int defaultValue) throws Exception
+	{
+		String value = Utils.getOption(flag, options);
+		return value.length() > 0 ? Integer.parseInt(value) : defaultValue;
+	}
+
+	private static double doubleOption(char flag, String[] options, double defaultValue) throws Exception
+	{
+		String value = Utils.getOption(flag, options);
+		return value.length() > 0 ? Double.parseDouble(value) : defaultValue;
+	}
+}
@@ -1,16 +1,19 @@
 package weka.custom_classifier;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 
 import weka.core.Attribute;
 
-public class Tree {
+public class Tree implements Serializable {
+	private static final long serialVersionUID = 1L;
 	private Tree[] children;
 	private Attribute attribute;
 	private double classValue;
 	private Attribute classAttribute;
 	private double[] probs; //probability distribution of each attribute value -> for J48
+	private double splitPoint; //threshold of numeric attribute: child 0 is less or equal, child 1 is greater -> for J48
         
 	public Tree(){}
 	
@@ -22,6 +25,10 @@ public class Tree {
 		classValue = value;
 	}
 	
+	public void setSplitPoint(double value){
+		splitPoint = value;
+	}
+	
 	public void setClassAttribute(Attribute att){
 		classAttribute = att;
 	}
@@ -34,6 +41,10 @@ public class Tree {
 		return classValue;
 	}
 	
+	public double getSplitPoint(){
+		return splitPoint;
+	}
+	
 	public Attribute getClassAttribute(){
 		return classAttribute;
 	}
@@ -0,0 +1,57 @@
+package weka.custom_classifier;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class BinnedColumnsTest extends TestCase {
+
+	/**
+	 * Hand the root histograms down to the children of bounds, every child that can be split
+	 * gets the histograms counted directly from its rows, the subtracted ones included
+	 */
+	private static void assertChildHistograms(String message, ColumnarDataset data, BinnedColumns binned, int[] rows, int[] bounds){
+		NodeStatistics parent = NodeStatistics.count(data, rows, 0, rows.length);
+		parent.setHistograms(binned.histograms(rows, 0, rows.length));
+		NodeStatistics[] children = new NodeStatistics[bounds.length - 1];
+		for(int i = 0; i < children.length; i++){
+			children[i] = NodeStatistics.count(data, rows, bounds[i], bounds[i + 1]);
+		}
+
+		binned.childHistograms(parent, children, rows, bounds);
+
+		assertNull(message, parent.getHistograms());
+		for(int i = 0; i < children.length; i++){
+			int[][] histograms = children[i].getHistograms();
+			if(children[i].isPure()){
+				assertNull(message + " child " + i, histograms);
+				continue;
+			}
+			int[][] counted = binned.histograms(rows, bounds[i], bounds[i + 1]);
+			for(int att = 0; att < data.numAttributes(); att++){
+				assertTrue(message + " child " + i + " attribute " + att, Arrays.equals(counted[att], histograms[att]));
+			}
+		}
+	}
+
+	public void testSubtractedHistogramEqualsCounted() throws Exception {
+		for(String name : Examples.NOMINAL_CLASS){
+			ColumnarDataset data = new ColumnarDataset(Examples.withMissingValues(Examples.load(name)));
+			BinnedColumns binned = new BinnedColumns(data);
+			int n = data.numRows();
+			int[] rows = RowPartition.identity(n);
+			Random random = new Random(1);
+			for(int i = n - 1; i > 0; i--){
+				int j = random.nextInt(i + 1);
+				int swap = rows[i];
+				rows[i] = rows[j];
+				rows[j] = swap;
+			}
+
+			assertChildHistograms(name + " largest last", data, binned, rows, new int[] {0, n / 6, n / 6 + n / 3, n});
+			assertChildHistograms(name + " largest in the middle", data, binned, rows, new int[] {0, n / 6, n / 6 + n / 2, n});
+			assertChildHistograms(name + " two children", data, binned, rows, new int[] {0, n - n / 3, n});
+		}
+	}
+}
@@ -0,0 +1,52 @@
+package weka.custom_classifier;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+import weka.core.Instances;
+
+public class ColumnarFileTest extends TestCase {
+
+	private static void assertSameInstances(String message, Instances expected, Instances actual){
+		assertTrue(message + " header", expected.equalHeaders(actual));
+		assertEquals(message + " class index", expected.classIndex(), actual.classIndex());
+		assertEquals(message + " rows", expected.numInstances(), actual.numInstances());
+		for(int i = 0; i < expected.numInstances(); i++){
+			for(int att = 0; att < expected.numAttributes(); att++){
+				assertEquals(message + " row " + i + " attribute " + att, Double.valueOf(expected.instance(i).value(att)),
+						Double.valueOf(actual.instance(i).value(att)));
+			}
+		}
+	}
+
+	public void testWriteReadRoundTrip() throws Exception {
+		for(String name : Examples.ALL){
+			Instances data = Examples.load(name);
+			File file = File.createTempFile(name, ".col");
+			try {
+				ColumnarFile.write(data, file);
+				assertSameInstances(name, data, ColumnarFile.readInstances(file));
+
+				int[] classIndex = new int[1];
+				ColumnarDataset columns = ColumnarFile.read(file, classIndex);
+				assertEquals(name, data.classIndex(), classIndex[0]);
+				assertEquals(name, data.numInstances(), columns.numRows());
+			} finally {
+				file.delete();
+			}
+		}
+	}
+
+	public void testWeightedInstancesAreRefused() throws Exception {
+		Instances data = Examples.load("weather.nominal");
+		data.instance(0).setWeight(2.0);
+		File file = File.createTempFile("weighted", ".col");
+		try {
+			ColumnarFile.write(data, file);
+			fail("weight written as 1");
+		} catch (IllegalArgumentException expected) {
+		} finally {
+			file.delete();
+		}
+	}
+}
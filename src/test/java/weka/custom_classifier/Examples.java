@@ -0,0 +1,71 @@
+package weka.custom_classifier;
+
+import java.io.File;
+import java.io.IOException;
+
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.converters.ArffLoader;
+import weka.filters.Filter;
+import weka.filters.unsupervised.attribute.Discretize;
+import weka.filters.unsupervised.attribute.ReplaceMissingValues;
+
+/**
+ * Datasets of example/ for the tests, class is the last attribute
+ */
+public class Examples {
+	/** every dataset */
+	public static final String[] ALL = {"iris", "diabetes", "glass", "labor", "soybean",
+			"weather.nominal", "weather.numeric", "activity.nominal", "supermarket", "cpu"};
+	/** datasets with nominal class */
+	public static final String[] NOMINAL_CLASS = {"iris", "diabetes", "glass", "labor", "soybean",
+			"weather.nominal", "weather.numeric", "activity.nominal", "supermarket"};
+	/** datasets with nominal attributes only */
+	public static final String[] NOMINAL = {"weather.nominal", "soybean", "activity.nominal"};
+
+	private Examples(){}
+
+	/**
+	 * @param name dataset name, file example/name.arff
+	 * @return instances, class index set to the last attribute
+	 */
+	public static Instances load(String name) throws IOException {
+		ArffLoader loader = new ArffLoader();
+		loader.setSource(new File("example", name + ".arff"));
+		Instances data = loader.getDataSet();
+		data.setClassIndex(data.numAttributes() - 1);
+		return data;
+	}
+
+	/**
+	 * Copy with some attribute values set missing, the class is kept
+	 * @param data instances
+	 * @return copy with every fifth cell missing, on a diagonal pattern
+	 */
+	public static Instances withMissingValues(Instances data){
+		Instances copy = new Instances(data);
+		for(int i = 0; i < copy.numInstances(); i++){
+			Instance instance = copy.instance(i);
+			for(int att = 0; att < copy.numAttributes(); att++){
+				if(att != copy.classIndex() && (i + att) % 5 == 0){
+					instance.setMissing(att);
+				}
+			}
+		}
+		return copy;
+	}
+
+	/**
+	 * Copy for the ID3 learners: numeric attributes discretized, missing values filled in
+	 * @param data instances with class index set
+	 * @return nominal instances without missing value
+	 */
+	public static Instances nominal(Instances data) throws Exception {
+		Discretize discretize = new Discretize();
+		discretize.setInputFormat(data);
+		Instances retVal = Filter.useFilter(data, discretize);
+		ReplaceMissingValues replace = new ReplaceMissingValues();
+		replace.setInputFormat(retVal);
+		return Filter.useFilter(retVal, replace);
+	}
+}
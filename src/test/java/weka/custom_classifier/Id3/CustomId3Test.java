@@ -0,0 +1,113 @@
+package weka.custom_classifier.Id3;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import junit.framework.TestCase;
+import weka.core.Attribute;
+import weka.core.FastVector;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.custom_classifier.ColumnarDataset;
+import weka.custom_classifier.Examples;
+import weka.custom_classifier.Tree;
+
+public class CustomId3Test extends TestCase {
+
+	/**
+	 * Class first, and an attribute that tells nothing about it
+	 */
+	private static Instances classFirstNoGain(){
+		FastVector classes = new FastVector(2);
+		classes.addElement("yes");
+		classes.addElement("no");
+		FastVector values = new FastVector(2);
+		values.addElement("a");
+		values.addElement("b");
+		FastVector attributes = new FastVector(2);
+		attributes.addElement(new Attribute("class", classes));
+		attributes.addElement(new Attribute("x", values));
+		Instances data = new Instances("noGain", attributes, 4);
+		data.setClassIndex(0);
+		double[][] rows = {{0, 0}, {1, 0}, {0, 1}, {1, 1}};
+		for(int i = 0; i < rows.length; i++){
+			data.add(new Instance(1.0, rows[i]));
+		}
+		return data;
+	}
+
+	public void testNoGainWithClassFirstIsLeaf() throws Exception {
+		Instances data = classFirstNoGain();
+		CustomId3 id3 = new CustomId3();
+		id3.buildClassifier(data);
+		for(int i = 0; i < data.numInstances(); i++){
+			assertEquals(0.0, id3.classifyInstance(data.instance(i)), 0.0);
+		}
+	}
+
+	public void testForkJoinBuildsSameTree() throws Exception {
+		for(String name : Examples.NOMINAL){
+			Instances data = Examples.load(name);
+			CustomId3 sequential = new CustomId3();
+			sequential.buildClassifier(new Instances(data));
+			CustomId3 parallel = new CustomId3();
+			parallel.setParallelOption(1, 4);
+			parallel.setSubtreeParallelOption(1);
+			parallel.buildClassifier(new Instances(data));
+			assertEquals(name, sequential.toString(), parallel.toString());
+		}
+	}
+
+	public void testCompiledTreeMatchesTree() throws Exception {
+		for(String name : Examples.NOMINAL){
+			Instances data = Examples.load(name);
+			CustomId3 id3 = new CustomId3();
+			id3.buildClassifier(new Instances(data));
+
+			double[][] rows = new double[data.numInstances()][];
+			for(int i = 0; i < data.numInstances(); i++){
+				rows[i] = data.instance(i).toDoubleArray();
+			}
+			double[] predictions = new double[rows.length];
+			id3.classifyInstances(rows, predictions);
+
+			for(int i = 0; i < data.numInstances(); i++){
+				Tree tree = id3.decisionTree();
+				while(tree.getAttribute() != null){
+					tree = tree.getChild((int) data.instance(i).value(tree.getAttribute()));
+				}
+				String message = name + " instance " + i;
+				assertEquals(message, Double.valueOf(tree.getClassValue()), Double.valueOf(id3.classifyInstance(data.instance(i))));
+				assertEquals(message, Double.valueOf(tree.getClassValue()), Double.valueOf(predictions[i]));
+			}
+		}
+	}
+
+	public void testFileBuildMatchesInMemoryBuild() throws Exception {
+		for(String name : Examples.NOMINAL_CLASS){
+			Instances data = Examples.nominal(Examples.load(name));
+			File file = File.createTempFile(name, ".arff");
+			try {
+				Files.write(file.toPath(), data.toString().getBytes("UTF-8"));
+				CustomId3 inMemory = new CustomId3();
+				inMemory.buildClassifier(new Instances(data));
+				CustomId3 levelWise = new CustomId3();
+				levelWise.buildClassifier(file, data.classIndex());
+				assertEquals(name, inMemory.toString(), levelWise.toString());
+			} finally {
+				file.delete();
+			}
+		}
+	}
+
+	public void testColumnarBuildSameTree() throws Exception {
+		for(String name : Examples.NOMINAL){
+			Instances data = Examples.load(name);
+			CustomId3 instances = new CustomId3();
+			instances.buildClassifier(new Instances(data));
+			CustomId3 columnar = new CustomId3();
+			columnar.buildClassifier(new ColumnarDataset(data));
+			assertEquals(name, instances.toString(), columnar.toString());
+		}
+	}
+}
@@ -0,0 +1,46 @@
+package weka.custom_classifier.Id3;
+
+import junit.framework.TestCase;
+import weka.classifiers.Classifier;
+import weka.core.Attribute;
+import weka.core.FastVector;
+import weka.core.Instance;
+import weka.core.Instances;
+
+public class HoeffdingId3Test extends TestCase {
+
+	private static Instances dataset(){
+		FastVector values = new FastVector(2);
+		values.addElement("a");
+		values.addElement("b");
+		FastVector classes = new FastVector(2);
+		classes.addElement("yes");
+		classes.addElement("no");
+		FastVector attributes = new FastVector(2);
+		attributes.addElement(new Attribute("x", values));
+		attributes.addElement(new Attribute("class", classes));
+		Instances data = new Instances("four", attributes, 4);
+		data.setClassIndex(1);
+		double[][] rows = {{0, 0}, {0, 0}, {1, 1}, {1, 1}};
+		for(int i = 0; i < rows.length; i++){
+			data.add(new Instance(1.0, rows[i]));
+		}
+		return data;
+	}
+
+	public void testCopyOfBuiltTree() throws Exception {
+		Instances data = dataset();
+		HoeffdingId3 id3 = new HoeffdingId3();
+		id3.setOption(1, 0.5, 1.0);
+		id3.buildClassifier(data);
+
+		HoeffdingId3 copy = (HoeffdingId3) Classifier.makeCopy(id3);
+		for(int i = 0; i < data.numInstances(); i++){
+			assertEquals(id3.classifyInstance(data.instance(i)), copy.classifyInstance(data.instance(i)), 0.0);
+		}
+
+		//the copy keeps its leaf statistics and goes on learning
+		copy.updateClassifier(data.instance(0));
+		assertEquals(data.instance(0).classValue(), copy.classifyInstance(data.instance(0)), 0.0);
+	}
+}
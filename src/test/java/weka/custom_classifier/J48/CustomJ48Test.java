@@ -0,0 +1,98 @@
+package weka.custom_classifier.J48;
+
+import junit.framework.TestCase;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+import weka.custom_classifier.ColumnarDataset;
+import weka.custom_classifier.Examples;
+import weka.custom_classifier.Tree;
+
+public class CustomJ48Test extends TestCase {
+
+	private static CustomJ48 build(Instances data, int option, boolean parallel) throws Exception {
+		CustomJ48 j48 = new CustomJ48();
+		j48.setOption(option, 10);
+		if(parallel){
+			j48.setParallelOption(1, 4);
+			j48.setSubtreeParallelOption(1);
+		}
+		j48.buildClassifier(new Instances(data));
+		return j48;
+	}
+
+	public void testForkJoinBuildsSameTree() throws Exception {
+		for(String name : Examples.NOMINAL_CLASS){
+			Instances data = Examples.load(name);
+			for(int option = 0; option <= 3; option++){
+				assertEquals(name + " option " + option,
+						build(data, option, false).toString(), build(data, option, true).toString());
+			}
+		}
+	}
+
+	public void testColumnarBuildSameTree() throws Exception {
+		for(String name : Examples.NOMINAL_CLASS){
+			Instances data = Examples.load(name);
+			data.instance(0).setClassMissing(); //left out by both builds
+			for(int option = 0; option <= 3; option++){
+				CustomJ48 columnar = new CustomJ48();
+				columnar.setOption(option, 10);
+				columnar.buildClassifier(new ColumnarDataset(data));
+				assertEquals(name + " option " + option, build(data, option, false).toString(), columnar.toString());
+			}
+		}
+	}
+
+	/**
+	 * Reference traversal, a missing value follows the most populated branch of the node
+	 * @param tree grown tree
+	 * @param instance instance in the attribute space of the tree
+	 * @param raw same instance in the training attribute space, tells which values are missing
+	 */
+	private static double walk(Tree tree, Instance instance, Instance raw){
+		while(tree.getAttribute() != null){
+			double value = instance.value(tree.getAttribute());
+			int branch;
+			if(raw.isMissing(raw.dataset().attribute(tree.getAttribute().name()))){
+				branch = Utils.maxIndex(tree.getProbs());
+			}else if(tree.getAttribute().isNumeric()){
+				branch = value > tree.getSplitPoint() ? 1 : 0;
+			}else{
+				branch = (int) value;
+			}
+			tree = tree.getChild(branch);
+		}
+		return tree.getClassValue();
+	}
+
+	public void testCompiledTreeMatchesTree() throws Exception {
+		for(String name : Examples.NOMINAL_CLASS){
+			Instances data = Examples.load(name);
+			Instances test = Examples.withMissingValues(data);
+			for(int option = 0; option <= 3; option++){
+				CustomJ48 j48 = build(data, option, false);
+				Instances treeSpace = test;
+				if(option == 0){
+					treeSpace = j48.multiSplitNumericSuppliedTest(test);
+				}else if(option == 1){
+					treeSpace = j48.binarySplitNumericSuppliedTest(test);
+				}
+
+				double[][] rows = new double[test.numInstances()][];
+				for(int i = 0; i < test.numInstances(); i++){
+					rows[i] = test.instance(i).toDoubleArray();
+				}
+				double[] predictions = new double[rows.length];
+				j48.classifyInstances(rows, predictions);
+
+				for(int i = 0; i < test.numInstances(); i++){
+					double expected = walk(j48.decisionTree(), treeSpace.instance(i), test.instance(i));
+					String message = name + " option " + option + " instance " + i;
+					assertEquals(message, Double.valueOf(expected), Double.valueOf(j48.classifyInstance(test.instance(i))));
+					assertEquals(message, Double.valueOf(expected), Double.valueOf(predictions[i]));
+				}
+			}
+		}
+	}
+}
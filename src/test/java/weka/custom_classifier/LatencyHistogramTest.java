@@ -0,0 +1,82 @@
+package weka.custom_classifier;
+
+import junit.framework.TestCase;
+
+public class LatencyHistogramTest extends TestCase {
+
+	/**
+	 * @return highest value of the bucket holding value, read through percentile with a larger maximum recorded
+	 */
+	private static long bucketHighest(long value){
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(value);
+		histogram.record(Long.MAX_VALUE);
+		return histogram.percentile(0.5);
+	}
+
+	public void testBucketBoundaries(){
+		assertEquals(15, bucketHighest(15));
+		assertEquals(16, bucketHighest(16));
+		assertEquals(31, bucketHighest(31));
+		assertEquals(33, bucketHighest(32));
+		assertEquals(33, bucketHighest(33));
+		assertEquals(35, bucketHighest(34));
+
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(Long.MAX_VALUE);
+		assertEquals(Long.MAX_VALUE, histogram.max());
+		assertEquals(Long.MAX_VALUE, histogram.percentile(0.5));
+		assertEquals(Long.MAX_VALUE, bucketHighest(Long.MAX_VALUE - (1L << 57)));
+	}
+
+	public void testBucketsWithinOneSixteenth(){
+		for(int shift = 0; shift < 62; shift++){
+			for(long value : new long[] {1L << shift, (1L << shift) + 1, (3L << shift) - 1}){
+				long highest = bucketHighest(value);
+				assertTrue(value + " in bucket up to " + highest, highest >= value && highest <= value + value / 16);
+			}
+		}
+	}
+
+	public void testPercentile(){
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.percentile(0.5));
+		for(long value = 1; value <= 10; value++){
+			histogram.record(value);
+		}
+		histogram.record(100, 10);
+		assertEquals(20, histogram.count());
+		assertEquals(1055, histogram.sum());
+		assertEquals(100, histogram.max());
+		assertEquals(1, histogram.percentile(0.0));
+		assertEquals(5, histogram.percentile(0.25));
+		assertEquals(10, histogram.percentile(0.5));
+		assertEquals(100, histogram.percentile(0.51)); //bucket 100..103, bounded by the maximum
+		assertEquals(100, histogram.percentile(1.0));
+
+		histogram.record(-5);
+		assertEquals(0, histogram.percentile(0.0));
+	}
+
+	public void testMerge(){
+		LatencyHistogram all = new LatencyHistogram();
+		LatencyHistogram first = new LatencyHistogram();
+		LatencyHistogram second = new LatencyHistogram();
+		for(long value = 0; value < 1000; value += 7){
+			all.record(value * value);
+			(value % 2 == 0 ? first : second).record(value * value);
+		}
+		long secondCount = second.count();
+		long secondSum = second.sum();
+		first.merge(second);
+
+		assertEquals(all.count(), first.count());
+		assertEquals(all.sum(), first.sum());
+		assertEquals(all.max(), first.max());
+		for(double quantile = 0.0; quantile <= 1.0; quantile += 0.05){
+			assertEquals("quantile " + quantile, all.percentile(quantile), first.percentile(quantile));
+		}
+		assertEquals(secondCount, second.count());
+		assertEquals(secondSum, second.sum());
+	}
+}
@@ -0,0 +1,61 @@
+package weka.custom_classifier;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+import weka.classifiers.Classifier;
+import weka.core.Instances;
+import weka.custom_classifier.Id3.CustomId3;
+import weka.custom_classifier.J48.CustomJ48;
+
+public class ModelFileTest extends TestCase {
+
+	/**
+	 * Write the model, read it back and write it again: both files are equal,
+	 * the model read classifies test like the model written
+	 */
+	private static void assertRoundTrip(String message, Classifier model, Instances test) throws Exception {
+		File file = File.createTempFile("model", ".bin");
+		File again = File.createTempFile("model", ".bin");
+		try {
+			ModelFile.write(model, file);
+			Classifier read = ModelFile.read(file);
+			ModelFile.write(read, again);
+
+			assertEquals(message, model.getClass(), read.getClass());
+			assertTrue(message, Arrays.equals(Files.readAllBytes(file.toPath()), Files.readAllBytes(again.toPath())));
+			assertEquals(message, model.toString(), read.toString());
+			for(int i = 0; i < test.numInstances(); i++){
+				assertEquals(message + " instance " + i, Double.valueOf(model.classifyInstance(test.instance(i))),
+						Double.valueOf(read.classifyInstance(test.instance(i))));
+			}
+		} finally {
+			file.delete();
+			again.delete();
+		}
+	}
+
+	public void testCustomJ48RoundTrip() throws Exception {
+		for(String name : Examples.NOMINAL_CLASS){
+			Instances data = Examples.load(name);
+			Instances test = Examples.withMissingValues(data);
+			for(int option = 0; option <= 3; option++){
+				CustomJ48 j48 = new CustomJ48();
+				j48.setOption(option, 10);
+				j48.buildClassifier(new Instances(data));
+				assertRoundTrip(name + " option " + option, j48, test);
+			}
+		}
+	}
+
+	public void testCustomId3RoundTrip() throws Exception {
+		for(String name : Examples.NOMINAL){
+			Instances data = Examples.load(name);
+			CustomId3 id3 = new CustomId3();
+			id3.buildClassifier(new Instances(data));
+			assertRoundTrip(name, id3, data);
+		}
+	}
+}
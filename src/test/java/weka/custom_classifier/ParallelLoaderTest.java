@@ -0,0 +1,121 @@
+package weka.custom_classifier;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import junit.framework.TestCase;
+import weka.core.Attribute;
+import weka.core.FastVector;
+import weka.core.Instance;
+import weka.core.Instances;
+
+public class ParallelLoaderTest extends TestCase {
+
+	public void testArffSameAsArffLoader() throws Exception {
+		for(String name : Examples.NOMINAL_CLASS){
+			Instances expected = Examples.load(name);
+			for(int numThreads = 1; numThreads <= 4; numThreads *= 4){
+				String message = name + " on " + numThreads + " threads";
+				ColumnarDataset columns = new ParallelLoader(numThreads).loadArff(new File("example", name + ".arff"), expected.classIndex());
+				assertEquals(message + " class index", expected.classIndex(), columns.classIndex());
+				Instances actual = columns.toInstances();
+				assertTrue(message + " header", expected.equalHeaders(actual));
+				assertEquals(message + " rows", expected.numInstances(), actual.numInstances());
+				for(int i = 0; i < expected.numInstances(); i++){
+					for(int att = 0; att < expected.numAttributes(); att++){
+						Instance instance = expected.instance(i);
+						String cell = message + " row " + i + " attribute " + att;
+						assertEquals(cell + " missing", instance.isMissing(att), actual.instance(i).isMissing(att));
+						if(!instance.isMissing(att)){
+							assertEquals(cell, Double.valueOf(instance.value(att)), Double.valueOf(actual.instance(i).value(att)));
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return structure of the CSV cases: a nominal attribute whose values need quoting, a numeric one, a nominal class
+	 */
+	private static Instances structure(){
+		FastVector labels = new FastVector();
+		labels.addElement("a b");
+		labels.addElement("x, y");
+		labels.addElement("it's");
+		FastVector classes = new FastVector();
+		classes.addElement("yes");
+		classes.addElement("no");
+		FastVector attributes = new FastVector();
+		attributes.addElement(new Attribute("label", labels));
+		attributes.addElement(new Attribute("amount"));
+		attributes.addElement(new Attribute("class", classes));
+		Instances structure = new Instances("csv", attributes, 0);
+		structure.setClassIndex(2);
+		return structure;
+	}
+
+	private static ColumnarDataset loadCsv(String text) throws IOException {
+		File file = File.createTempFile("parallel", ".csv");
+		try {
+			OutputStream out = new FileOutputStream(file);
+			try {
+				out.write(text.getBytes("UTF-8"));
+			} finally {
+				out.close();
+			}
+			return new ParallelLoader(2).loadCsv(file, structure());
+		} finally {
+			file.delete();
+		}
+	}
+
+	public void testCsvQuotedValues() throws Exception {
+		ColumnarDataset columns = loadCsv("label,amount,class\n"
+				+ "'a b',1.5,yes\n"
+				+ "\"x, y\",-2e3,no\n"
+				+ "'it\\'s', 7 ,'yes'\n"
+				+ "?,?,no\n");
+		assertEquals(4, columns.numRows());
+		assertEquals(0, columns.nominalValue(0, 0));
+		assertEquals(1, columns.nominalValue(0, 1));
+		assertEquals(2, columns.nominalValue(0, 2));
+		assertTrue(columns.isMissing(0, 3));
+		assertEquals(Double.valueOf(1.5), Double.valueOf(columns.numericValue(1, 0)));
+		assertEquals(Double.valueOf(-2000), Double.valueOf(columns.numericValue(1, 1)));
+		assertEquals(Double.valueOf(7), Double.valueOf(columns.numericValue(1, 2)));
+		assertTrue(columns.isMissing(1, 3));
+		assertEquals(0, columns.classValue(2));
+		assertEquals(1, columns.classValue(3));
+	}
+
+	public void testCsvCrLfLineEnds() throws Exception {
+		ColumnarDataset columns = loadCsv("label,amount,class\r\n"
+				+ "'a b',1,yes\r\n"
+				+ "'x, y',2,no\r\n"
+				+ "\r\n");
+		assertEquals(2, columns.numRows());
+		assertEquals(1, columns.nominalValue(0, 1));
+		assertEquals(Double.valueOf(2), Double.valueOf(columns.numericValue(1, 1)));
+		assertEquals(0, columns.classValue(0));
+		assertEquals(1, columns.classValue(1));
+	}
+
+	public void testCsvTooFewValuesAreRejected() throws Exception {
+		try {
+			loadCsv("label,amount,class\n'a b',1,yes\n'a b',1\n");
+			fail("row with two values loaded");
+		} catch (IOException expected) {
+		}
+	}
+
+	public void testCsvTooManyValuesAreRejected() throws Exception {
+		try {
+			loadCsv("label,amount,class\n'a b',1,yes\n'a b',1,yes,2\n");
+			fail("row with four values loaded");
+		} catch (IOException expected) {
+		}
+	}
+}
@@ -0,0 +1,97 @@
+package weka.custom_classifier;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+import weka.core.Instances;
+
+public class PresortedColumnsTest extends TestCase {
+
+	private static double entropy(ColumnarDataset data, int[] rows, int from, int to){
+		int[] counts = new int[data.numClasses()];
+		for(int i = from; i < to; i++){
+			counts[data.classValue(rows[i])]++;
+		}
+		return ContingencyTable.entropy(counts, to - from);
+	}
+
+	/**
+	 * Brute force: try the midpoint of every two consecutive distinct values
+	 * @return {gain, largest value at or below the best midpoint}, {0, NaN} if no split gains
+	 */
+	private static double[] bruteForce(ColumnarDataset data, int[] rows, int from, int to, int att, double entropy){
+		double[] column = data.numericColumn(att);
+		double[] values = new double[to - from];
+		int numKnown = 0;
+		for(int i = from; i < to; i++){
+			if(!Double.isNaN(column[rows[i]])){
+				values[numKnown++] = column[rows[i]];
+			}
+		}
+		Arrays.sort(values, 0, numKnown);
+
+		double[] best = {0.0, Double.NaN};
+		for(int k = 0; k + 1 < numKnown; k++){
+			if(values[k] == values[k + 1]){
+				continue;
+			}
+			double midpoint = (values[k] + values[k + 1]) / 2;
+			int[] below = new int[data.numClasses()];
+			int[] above = new int[data.numClasses()];
+			int numBelow = 0;
+			for(int i = from; i < to; i++){
+				double value = column[rows[i]];
+				if(!Double.isNaN(value)){
+					if(value <= midpoint){
+						below[data.classValue(rows[i])]++;
+						numBelow++;
+					}else{
+						above[data.classValue(rows[i])]++;
+					}
+				}
+			}
+			int numAbove = numKnown - numBelow;
+			double gain = entropy
+					- (double) numBelow / (double) (to - from) * ContingencyTable.entropy(below, numBelow)
+					- (double) numAbove / (double) (to - from) * ContingencyTable.entropy(above, numAbove);
+			if(gain > best[0]){
+				best[0] = gain;
+				best[1] = values[k];
+			}
+		}
+		return best;
+	}
+
+	private static void assertBestSplits(String message, ColumnarDataset data, PresortedColumns presorted, int[] rows, int from, int to){
+		double entropy = entropy(data, rows, from, to);
+		for(int att = 0; att < data.numAttributes(); att++){
+			if(att != data.classIndex() && data.numericColumn(att) != null){
+				PresortedColumns.Split split = presorted.bestSplit(att, from, to, entropy, to - from);
+				double[] expected = bruteForce(data, rows, from, to, att, entropy);
+				assertEquals(message + " attribute " + att + " gain", expected[0], split.gain, 1e-12);
+				assertEquals(message + " attribute " + att + " split point", Double.valueOf(expected[1]), Double.valueOf(split.splitPoint));
+			}
+		}
+	}
+
+	public void testBestSplitIsBestMidpoint() throws Exception {
+		for(String name : new String[] {"iris", "diabetes", "glass", "labor"}){
+			Instances instances = Examples.load(name);
+			ColumnarDataset data = new ColumnarDataset(instances);
+			int[] rows = RowPartition.identity(data.numRows());
+			PresortedColumns presorted = new PresortedColumns(data, rows);
+			assertBestSplits(name, data, presorted, rows, 0, rows.length);
+
+			//the child slices stay sorted after a partition
+			int att = 0;
+			while(data.numericColumn(att) == null){
+				att++;
+			}
+			PresortedColumns.Split split = presorted.bestSplit(att, 0, rows.length, entropy(data, rows, 0, rows.length), rows.length);
+			int[] bounds = presorted.partition(rows, 0, rows.length, att, split.splitPoint);
+			for(int i = 0; i + 1 < bounds.length; i++){
+				assertBestSplits(name + " child " + i, data, presorted, rows, bounds[i], bounds[i + 1]);
+			}
+		}
+	}
+}